@@ -0,0 +1,171 @@
+package hudson.model;
+
+import hudson.FilePath;
+import hudson.remoting.Callable;
+import hudson.remoting.RemoteOutputStream;
+import hudson.util.LocalAgent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * Remoting throughput to agents started by {@link LocalAgent}: file transfer
+ * with {@link FilePath}, log streaming back to the master, and Subversion
+ * checkouts run on every agent at once, outside of any build.
+ *
+ * System properties: <tt>hudson.tester.agents</tt> is the number of agents (4
+ * by default), <tt>hudson.tester.forkAgents</tt> runs them in child JVMs
+ * instead of in-process.
+ *
+ * FIXME the agents are not registered as Hudson slaves: builds still run on
+ * the executors of the master only, and the checkouts are driven directly
+ * like in {@link Issue886Test}
+ */
+public class AgentThroughputTest extends SubversionTestCase {
+	private static final int AGENTS = Integer.getInteger("hudson.tester.agents", 4);
+	private static final boolean FORK = Boolean.getBoolean("hudson.tester.forkAgents");
+	private static final int MB = 1024 * 1024;
+
+	List<LocalAgent> agents = new ArrayList<LocalAgent>();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		for (int i = 0; i < AGENTS; i++) {
+			File root = createTempDir("hudson-agent");
+			agents.add(FORK ? LocalAgent.forked("agent" + i, root) : LocalAgent.inProcess("agent" + i, root));
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (LocalAgent agent : agents)
+			agent.close();
+		super.tearDown();
+	}
+
+	private static double mbPerSecond(long bytes, long millis) {
+		return bytes / (double) MB / Math.max(millis, 1) * 1000;
+	}
+
+	public void testFileTransfer() throws Exception {
+		final int SIZE = 16 * MB;
+		FilePath remote = agents.get(0).getRoot().child("transfer.bin");
+		byte[] buf = new byte[64 * 1024];
+
+		long start = System.currentTimeMillis();
+		OutputStream out = remote.write();
+		for (int written = 0; written < SIZE; written += buf.length)
+			out.write(buf);
+		out.close();
+		long upload = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		InputStream in = remote.read();
+		long read = 0;
+		int n;
+		while ((n = in.read(buf)) != -1)
+			read += n;
+		in.close();
+		long download = System.currentTimeMillis() - start;
+
+		assertEquals(SIZE, read);
+		System.out.println("FilePath to agent: " + mbPerSecond(SIZE, upload) + "MB/s, from agent: "
+				+ mbPerSecond(SIZE, download) + "MB/s");
+	}
+
+	/**
+	 * Writes lines to a stream exported by the master, like a build log
+	 */
+	private static class LogWriter implements Callable<Long, IOException> {
+		private static final long serialVersionUID = 1L;
+		private final OutputStream log;
+		private final int lines;
+
+		LogWriter(OutputStream log, int lines) {
+			this.log = log;
+			this.lines = lines;
+		}
+
+		public Long call() throws IOException {
+			long bytes = 0;
+			for (int i = 0; i < lines; i++) {
+				byte[] line = ("[INFO] line " + i + " of a chatty build\n").getBytes();
+				log.write(line);
+				bytes += line.length;
+			}
+			log.close();
+			return bytes;
+		}
+	}
+
+	public void testLogStreaming() throws Exception {
+		final int LINES = 100000;
+		CountingOutputStream log = new CountingOutputStream(new NullOutputStream());
+		long start = System.currentTimeMillis();
+		long bytes = agents.get(0).getChannel().call(new LogWriter(new RemoteOutputStream(log), LINES));
+		long duration = System.currentTimeMillis() - start;
+		assertEquals(bytes, log.getCount());
+		System.out.println("Log streaming from agent: " + LINES + " lines, " + mbPerSecond(bytes, duration) + "MB/s");
+	}
+
+	/**
+	 * Check the same project out on every agent at once, and on one agent
+	 * only, for comparison
+	 */
+	public void testCheckoutOnAgents() throws Exception {
+		final FreeStyleProject project = new FreeStyleProject(hudson, "test");
+		File projectDir = createSubversionProject(project);
+		for (int i = 0; i < 200; i++)
+			exec("touch", new File(projectDir, "file" + i).getPath());
+		exec("svn", "add", "-q", "--force", projectDir.getPath());
+		svnCommit("create project");
+
+		long start = System.currentTimeMillis();
+		checkout(new FreeStyleBuild(project), agents.get(0), "single");
+		long single = System.currentTimeMillis() - start;
+
+		List<Thread> threads = new ArrayList<Thread>();
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		start = System.currentTimeMillis();
+		for (final LocalAgent agent : agents) {
+			// builds are numbered sequentially
+			final FreeStyleBuild build = new FreeStyleBuild(project);
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					try {
+						checkout(build, agent, "parallel");
+					} catch (Throwable e) {
+						failures.add(e);
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t : threads)
+			t.join();
+		long parallel = System.currentTimeMillis() - start;
+
+		assertTrue(failures.toString(), failures.isEmpty());
+		for (LocalAgent agent : agents)
+			assertTrue(agent.getRoot().child("parallel").child("file199").exists());
+		System.out.println("Checkout on 1 agent: " + single + "ms, on " + agents.size() + " agents at once: "
+				+ parallel + "ms");
+	}
+
+	private void checkout(FreeStyleBuild build, LocalAgent agent, String workspace) throws Exception {
+		File changeLog = new File(createTempDir("changelog"), "changelog.xml");
+		assertTrue(build.getProject().getScm().checkout(build, null, agent.getRoot().child(workspace),
+				new StreamBuildListener(System.err), changeLog));
+	}
+}
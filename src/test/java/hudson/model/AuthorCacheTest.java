@@ -0,0 +1,44 @@
+package hudson.model;
+
+import hudson.tasks.Mailer;
+import hudson.util.AuthorCache;
+
+/**
+ * Tests for {@link AuthorCache}: an address changed while its author was being
+ * resolved is not hidden by the stale resolution.
+ */
+public class AuthorCacheTest extends HudsonTestCase {
+    public void testInvalidatedDuringLookup() throws Exception {
+        final User user = User.get("author");
+        AuthorCache cache = new AuthorCache(10) {
+            @Override
+            protected Author lookup(String author) {
+                Author resolved = super.lookup(author);
+                // the address changes before the result is stored
+                try {
+                    user.addProperty(new Mailer.UserProperty("author@example.com"));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                invalidate(author);
+                return resolved;
+            }
+        };
+        assertNull(cache.getEmail("author"));
+        assertEquals("Stale result stored", 0, cache.size());
+        assertEquals(0, cache.getPendingInvalidations());
+    }
+
+    public void testInvalidate() throws Exception {
+        AuthorCache cache = new AuthorCache(10);
+        User user = User.get("author");
+        assertNull(cache.getEmail("author"));
+        user.addProperty(new Mailer.UserProperty("author@example.com"));
+        assertNull("Stale until invalidated", cache.getEmail("author"));
+        cache.invalidate("author");
+        assertEquals(0, cache.getPendingInvalidations());
+        assertEquals("author@example.com", cache.getEmail("author"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+}
@@ -0,0 +1,105 @@
+package hudson.model;
+
+import hudson.tasks.Mailer;
+import hudson.util.AuthorCache;
+import hudson.util.BenchmarkResults;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cost of resolving changelog authors as the user directory grows: creation of
+ * tens of thousands of {@link User}s, lookups of existing ones, listing them
+ * all, and the same lookups through an {@link AuthorCache}. Lookups run from
+ * several threads, with and without the cache, with a skewed workload where a
+ * few authors commit most changes.
+ *
+ * The number of users is set by the <tt>hudson.tester.users</tt> system
+ * property, 20000 by default. Every tenth user has an e-mail address.
+ */
+public class AuthorLookupBenchmarkTest extends HudsonTestCase {
+    private static final int USERS = Integer.getInteger("hudson.tester.users", 20000);
+    private static final int LOOKUPS = 100000;
+    private static final int THREADS = 8;
+
+    private static String author(int i) {
+        return "author" + i;
+    }
+
+    /**
+     * @return an author index, nine times out of ten among the first 1000
+     */
+    private static int skewed(Random random) {
+        return random.nextInt(10) == 0 ? random.nextInt(USERS) : random.nextInt(Math.min(1000, USERS));
+    }
+
+    /**
+     * Run the skewed lookups from {@link #THREADS} threads
+     *
+     * @param cache
+     *            null to resolve every author without a cache
+     * @return the time taken, in milliseconds
+     */
+    private long lookups(final AuthorCache cache) throws InterruptedException {
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final Random random = new Random(t);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < LOOKUPS / THREADS; i++) {
+                            int author = skewed(random);
+                            AuthorCache.Author resolved = cache == null ? AuthorCache.resolve(author(author))
+                                    : cache.get(author(author));
+                            assertEquals(author(author), resolved.user.getId());
+                            assertEquals(author % 10 == 0 ? author(author) + "@example.com" : null, resolved.email);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+        }
+        long start = System.currentTimeMillis();
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        long duration = System.currentTimeMillis() - start;
+        assertTrue(failures.toString(), failures.isEmpty());
+        return duration;
+    }
+
+    public void testLookups() throws Exception {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < USERS; i++) {
+            User user = User.get(author(i));
+            if (i % 10 == 0)
+                user.addProperty(new Mailer.UserProperty(author(i) + "@example.com"));
+        }
+        long creation = System.currentTimeMillis() - start;
+        System.out.println(USERS + " users created in " + creation + "ms, " + creation * 1000 / USERS
+                + "us per user");
+
+        long uncached = lookups(null);
+
+        start = System.currentTimeMillis();
+        int all = User.getAll().size();
+        System.out.println("User.getAll(): " + all + " users in " + (System.currentTimeMillis() - start) + "ms");
+        assertTrue(all >= USERS);
+
+        AuthorCache cache = new AuthorCache(2000);
+        long cached = lookups(cache);
+
+        System.out.println(LOOKUPS + " lookups from " + THREADS + " threads: uncached " + uncached * 1000 / LOOKUPS
+                + "us each, cached " + cached * 1000 / LOOKUPS + "us each, " + cache.getHits() + " hits, "
+                + cache.getMisses() + " misses");
+        BenchmarkResults.getInstance().lowerIsBetter("AuthorLookupBenchmarkTest.uncached.us", uncached * 1000.0 / LOOKUPS);
+        BenchmarkResults.getInstance().lowerIsBetter("AuthorLookupBenchmarkTest.cached.us", cached * 1000.0 / LOOKUPS);
+        assertSame(User.get(author(0)), cache.getUser(author(0)));
+    }
+}
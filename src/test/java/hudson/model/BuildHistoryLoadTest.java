@@ -0,0 +1,91 @@
+package hudson.model;
+
+import hudson.util.BenchmarkResults;
+import hudson.util.BuildHistoryFixture;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+
+/**
+ * Startup and access cost of a project with a long build history, synthesized
+ * by {@link BuildHistoryFixture}.
+ *
+ * This version of Hudson loads all build records eagerly when a job is
+ * loaded. Startup is timed with one build record and with the full history;
+ * the difference divided by the history length is what each record costs,
+ * i.e. what lazy loading would pay on first access to a build instead of at
+ * startup.
+ *
+ * The history length is set by the <tt>hudson.tester.buildHistory</tt> system
+ * property, 2000 builds by default.
+ */
+public class BuildHistoryLoadTest extends HudsonTestCase {
+    private static final int BUILDS = Integer.getInteger("hudson.tester.buildHistory", 2000);
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private long usedHeap() {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Shut the running Hudson down and start a new one on the given home
+     *
+     * @return startup time in milliseconds
+     */
+    private long restart(File home, String label) {
+        shutdownHudson();
+        long heap = usedHeap();
+        long start = System.currentTimeMillis();
+        hudson = newHudson(home);
+        long duration = System.currentTimeMillis() - start;
+        long heapGrowth = usedHeap() - heap;
+        System.out.println(label + ": startup " + duration + "ms, heap +" + heapGrowth / 1024 + "KB");
+        String metric = "BuildHistoryLoadTest." + label.replaceAll("\\W+", "_");
+        BenchmarkResults.getInstance().lowerIsBetter(metric + ".startup.ms", duration);
+        BenchmarkResults.getInstance().lowerIsBetter(metric + ".heap.KB", heapGrowth / 1024);
+        return duration;
+    }
+
+    public void testLoadHistory() throws Exception {
+        FreeStyleProject project = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, "history");
+        setCommand(project, "echo Hello World");
+        project.save();
+        assertSuccess(build(project).getResult());
+        File home = hudson.root;
+        File projectDir = project.getRootDir();
+        // not to keep the previous instance in the heap
+        project = null;
+
+        long single = restart(home, "1 build record");
+
+        BuildHistoryFixture fixture = new BuildHistoryFixture(projectDir);
+        fixture.synthesize(BUILDS);
+        System.out.println(BUILDS + " build records: " + fixture.usage());
+        long eager = restart(home, BUILDS + " build records");
+
+        project = (FreeStyleProject) hudson.getItem("history");
+        assertEquals(BUILDS, project.getBuilds().size());
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++)
+            project.getBuilds();
+        System.out.println("getBuilds(): " + (System.currentTimeMillis() - start) * 10 + "us per call");
+
+        Random random = new Random(0);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            int number = random.nextInt(BUILDS) + 1;
+            assertEquals(number, project.getBuildByNumber(number).getNumber());
+        }
+        System.out.println("getBuildByNumber(): " + (System.currentTimeMillis() - start) / 10 + "us per call");
+
+        double perRecord = (eager - single) / (double) BUILDS;
+        System.out.println("Eager loading: " + eager + "ms at startup, " + perRecord
+                + "ms per record; lazy loading would start in about " + single
+                + "ms and pay the per record cost on first access");
+    }
+}
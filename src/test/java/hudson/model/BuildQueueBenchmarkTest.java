@@ -0,0 +1,91 @@
+package hudson.model;
+
+import hudson.util.BenchmarkResults;
+import hudson.util.BuildLoadGenerator;
+import hudson.util.NoOpBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ceiling of the controller independent of build work: thousands of projects
+ * building with a {@link NoOpBuilder}, each scheduled once per round, with
+ * different numbers of executors. Reports the builds per second and the
+ * percentiles of the latency from scheduling to the build starting its work,
+ * and the time {@link Queue#maintain()} takes with all the projects waiting
+ * in the queue.
+ *
+ * System properties:
+ * <ul>
+ * <li><tt>hudson.tester.loadProjects</tt>, the number of projects, 2000 by
+ * default</li>
+ * <li><tt>hudson.tester.loadExecutors</tt>, the numbers of executors of the
+ * rounds, <tt>1,2,4,8</tt> by default</li>
+ * </ul>
+ */
+public class BuildQueueBenchmarkTest extends HudsonTestCase {
+    private static final int PROJECTS = Integer.getInteger("hudson.tester.loadProjects", 2000);
+    private static final String EXECUTORS = System.getProperty("hudson.tester.loadExecutors", "1,2,4,8");
+    private static final int MAINTAIN_CALLS = 20;
+    private static final long ROUND_TIMEOUT = 600000;
+
+    private BuildLoadGenerator generator = new BuildLoadGenerator();
+    private List<FreeStyleProject> projects = new ArrayList<FreeStyleProject>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        setQuietPeriod(0);
+        for (int i = 0; i < PROJECTS; i++) {
+            FreeStyleProject project = new FreeStyleProject(hudson, "load" + i);
+            setBuilder(project, new NoOpBuilder(generator));
+            projects.add(project);
+        }
+    }
+
+    public void testQueueMaintenance() throws Exception {
+        // the builds stay in the queue during the measure
+        setQuietPeriod(3600);
+        Queue queue = hudson.getQueue();
+        try {
+            for (FreeStyleProject project : projects)
+                assertTrue(project.scheduleBuild());
+            assertEquals(PROJECTS, queue.getItems().length);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < MAINTAIN_CALLS; i++)
+                queue.maintain();
+            double micros = (System.nanoTime() - start) / 1000.0 / MAINTAIN_CALLS;
+            System.out.println("Queue.maintain() with " + PROJECTS + " waiting items: " + Math.round(micros)
+                    + "us");
+            BenchmarkResults.getInstance().lowerIsBetter("BuildQueueBenchmarkTest.maintain" + PROJECTS + ".us",
+                    micros);
+        } finally {
+            for (FreeStyleProject project : projects)
+                queue.cancel(project);
+        }
+        assertEquals(0, queue.getItems().length);
+    }
+
+    public void testThroughput() throws Exception {
+        for (String executors : EXECUTORS.split(",")) {
+            int n = Integer.parseInt(executors.trim());
+            setNumExecutors(n);
+            BuildLoadGenerator.Result result = generator.run(projects, ROUND_TIMEOUT);
+            assertNotNull("Timed out running " + PROJECTS + " builds with " + n + " executors", result);
+            assertEquals(PROJECTS, result.builds);
+
+            System.out.println(n + " executors: " + result.builds + " builds in " + result.millis + "ms, "
+                    + Math.round(result.getBuildsPerSecond()) + " builds/s, scheduling latency p50 "
+                    + result.getLatency(50) + "ms p90 " + result.getLatency(90) + "ms p99 "
+                    + result.getLatency(99) + "ms max " + result.getLatency(100) + "ms");
+            BenchmarkResults results = BenchmarkResults.getInstance();
+            String prefix = "BuildQueueBenchmarkTest.executors" + n;
+            results.higherIsBetter(prefix + ".buildsPerSecond", result.getBuildsPerSecond());
+            results.lowerIsBetter(prefix + ".latencyP50.ms", result.getLatency(50));
+            results.lowerIsBetter(prefix + ".latencyP99.ms", result.getLatency(99));
+        }
+        for (FreeStyleProject project : projects)
+            assertSuccess(project.getLastBuild().getResult());
+    }
+}
@@ -0,0 +1,115 @@
+package hudson.model;
+
+import hudson.triggers.Trigger;
+import hudson.util.SubversionCommitNotifier;
+import hudson.util.SubversionPollingCoordinator;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Builds triggered by a Subversion <tt>post-commit</tt> hook through
+ * {@link SubversionCommitNotifier}, compared with cron based
+ * {@link hudson.triggers.SCMTrigger} polling.
+ */
+public class CommitNotificationTest extends SubversionTestCase {
+	SubversionPollingCoordinator coordinator;
+	SubversionCommitNotifier notifier;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		coordinator = new SubversionPollingCoordinator();
+		notifier = new SubversionCommitNotifier(svnrepo, coordinator);
+		notifier.install();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		notifier.stop();
+		super.tearDown();
+	}
+
+	private FreeStyleProject createPushedProject(String name) throws IOException {
+		FreeStyleProject project = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, name);
+		setCommand(project, "echo Hello World");
+		File wc = createSubversionProject(project);
+		coordinator.register(project, getRepositoryLocation(), wc.getName());
+		return project;
+	}
+
+	private File touch(FreeStyleProject project, String name) throws IOException {
+		File file = new File(new File(svnwc, project.getName()), name);
+		exec("touch", file.getPath());
+		svnAdd(file);
+		return file;
+	}
+
+	/**
+	 * Wait until the given build has started.
+	 *
+	 * @return milliseconds elapsed since <tt>since</tt>
+	 */
+	private long waitForBuildStart(int buildNumber, Project project, long since, int timeoutInSeconds)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutInSeconds * 1000L;
+		while (project.getBuildByNumber(buildNumber) == null) {
+			if (System.currentTimeMillis() > deadline)
+				fail("Timed out waiting " + timeoutInSeconds + " seconds for project " + project.getName()
+						+ " build #" + buildNumber + " to start");
+			Thread.sleep(5);
+		}
+		return System.currentTimeMillis() - since;
+	}
+
+	public void testOnlyAffectedProjectsAreScheduled() throws Exception {
+		FreeStyleProject projectA = createPushedProject("projectA");
+		FreeStyleProject projectB = createPushedProject("projectB");
+		svnCommit("create projects");
+		notifier.start();
+
+		touch(projectA, "hello");
+		svnCommit("hello");
+		assertSuccess(waitForBuild(1, projectA).getResult());
+		assertEquals(1, notifier.getNotificationCount());
+		assertEquals(0, projectB.getBuilds().size());
+
+		touch(projectB, "hello");
+		svnCommit("hello");
+		assertSuccess(waitForBuild(1, projectB).getResult());
+		assertEquals(1, projectA.getBuilds().size());
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testLatencyAgainstPolling() throws Exception {
+		setNumExecutors(2);
+		FreeStyleProject pushed = createPushedProject("pushed");
+		FreeStyleProject polled = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, "polled");
+		setCommand(polled, "echo Hello World");
+		createNonpollingSubversionProject(polled);
+		svnCommit("create projects");
+
+		// initial builds, so that polling compares against a previous build
+		assertSuccess(build(pushed).getResult());
+		assertSuccess(build(polled).getResult());
+		for (Trigger t : polled.getTriggers().values()) {
+			t.start(polled, false);
+		}
+		notifier.start();
+
+		touch(pushed, "hello");
+		touch(polled, "hello");
+		long committed = System.currentTimeMillis();
+		svnCommit("hello");
+
+		long pushLatency = waitForBuildStart(2, pushed, committed, 20);
+		// the cron thread ticks every minute
+		long pollLatency = waitForBuildStart(2, polled, committed, 120);
+		System.out.println("commit -> build start: push " + pushLatency + "ms, polling " + pollLatency + "ms");
+		assertTrue("Push (" + pushLatency + "ms) should beat polling (" + pollLatency + "ms)",
+				pushLatency < pollLatency);
+
+		waitForBuild(2, pushed);
+		waitForBuild(2, polled);
+	}
+}
@@ -0,0 +1,212 @@
+package hudson.model;
+
+import hudson.tasks.BuildTrigger;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test of concurrent job configuration: worker threads create projects,
+ * add build triggers between them and delete them, while builds run and the
+ * dependency graph is rebuilt in a loop, like job-DSL seed jobs do.
+ *
+ * Reports the operations per second, the time the workers spent blocked on
+ * monitors, and fails on any {@link ConcurrentModificationException}, any
+ * other error of the workers, or deadlock.
+ *
+ * System properties: <tt>hudson.tester.stressThreads</tt> is the number of
+ * worker threads (8 by default), <tt>hudson.tester.stressSeconds</tt> the
+ * duration of the test (30 by default).
+ */
+public class ConcurrentConfigurationTest extends HudsonTestCase {
+    private static final int THREADS = Integer.getInteger("hudson.tester.stressThreads", 8);
+    private static final int SECONDS = Integer.getInteger("hudson.tester.stressSeconds", 30);
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final List<FreeStyleProject> projects = new CopyOnWriteArrayList<FreeStyleProject>();
+    private final AtomicInteger names = new AtomicInteger();
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger reconfigured = new AtomicInteger();
+    private final AtomicInteger deleted = new AtomicInteger();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final AtomicInteger graphs = new AtomicInteger();
+
+    private final List<Throwable> concurrentModifications = Collections.synchronizedList(new ArrayList<Throwable>());
+    private final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+    private volatile long deadline;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        setNumExecutors(4);
+        if (threadBean.isThreadContentionMonitoringSupported())
+            threadBean.setThreadContentionMonitoringEnabled(true);
+    }
+
+    private FreeStyleProject randomProject(Random random) {
+        int size = projects.size();
+        if (size == 0)
+            return null;
+        try {
+            return projects.get(random.nextInt(size));
+        } catch (IndexOutOfBoundsException e) {
+            // deleted meanwhile
+            return null;
+        }
+    }
+
+    private void create() throws Exception {
+        FreeStyleProject project = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, "stress"
+                + names.incrementAndGet());
+        setCommand(project, "true");
+        projects.add(project);
+        created.incrementAndGet();
+    }
+
+    private void reconfigure(Random random) throws Exception {
+        FreeStyleProject upstream = randomProject(random);
+        FreeStyleProject downstream = randomProject(random);
+        if (upstream == null || downstream == null || upstream == downstream)
+            return;
+        try {
+            upstream.addPublisher(new BuildTrigger(Arrays.asList(new AbstractProject[] { downstream }), null));
+        } catch (IOException e) {
+            // its directory is gone if deleted meanwhile
+            if (projects.contains(upstream))
+                throw e;
+            return;
+        }
+        reconfigured.incrementAndGet();
+    }
+
+    private void delete(Random random) throws Exception {
+        FreeStyleProject project = randomProject(random);
+        if (project == null || !projects.remove(project))
+            return;
+        project.delete();
+        deleted.incrementAndGet();
+    }
+
+    private void schedule(Random random) {
+        FreeStyleProject project = randomProject(random);
+        if (project != null && project.scheduleBuild())
+            scheduled.incrementAndGet();
+    }
+
+    /**
+     * Runs the given operation until the deadline, sorting out the failures
+     */
+    private abstract class Worker extends Thread {
+        final Random random;
+        long blockedCount, blockedTime;
+
+        Worker(String name, int seed) {
+            super(name);
+            random = new Random(seed);
+        }
+
+        abstract void operate() throws Exception;
+
+        @Override
+        public void run() {
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    operate();
+                } catch (ConcurrentModificationException e) {
+                    concurrentModifications.add(e);
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+            // no thread info once terminated
+            ThreadInfo info = threadBean.getThreadInfo(getId());
+            blockedCount = info.getBlockedCount();
+            blockedTime = Math.max(info.getBlockedTime(), 0);
+        }
+    }
+
+    public void testConcurrentConfiguration() throws Exception {
+        for (int i = 0; i < 20; i++)
+            create();
+
+        List<Worker> workers = new ArrayList<Worker>();
+        for (int i = 0; i < THREADS; i++) {
+            workers.add(new Worker("configurator" + i, i) {
+                @Override
+                void operate() throws Exception {
+                    int operation = random.nextInt(10);
+                    if (operation < 3)
+                        create();
+                    else if (operation < 8)
+                        reconfigure(random);
+                    else
+                        delete(random);
+                }
+            });
+        }
+        workers.add(new Worker("scheduler", THREADS) {
+            @Override
+            void operate() throws Exception {
+                schedule(random);
+                Thread.sleep(50);
+            }
+        });
+        workers.add(new Worker("graph", THREADS + 1) {
+            @Override
+            void operate() throws Exception {
+                hudson.rebuildDependencyGraph();
+                graphs.incrementAndGet();
+            }
+        });
+
+        long start = System.currentTimeMillis();
+        deadline = start + SECONDS * 1000L;
+        for (Worker worker : workers)
+            worker.start();
+        // one deadline for all, not to wait a minute per stuck worker
+        long joinDeadline = deadline + 60000;
+        for (Worker worker : workers)
+            worker.join(Math.max(1, joinDeadline - System.currentTimeMillis()));
+        long duration = System.currentTimeMillis() - start;
+
+        long[] deadlocked = threadBean.findMonitorDeadlockedThreads();
+        if (deadlocked != null) {
+            for (ThreadInfo info : threadBean.getThreadInfo(deadlocked, Integer.MAX_VALUE))
+                System.out.println(info + " blocked at " + Arrays.asList(info.getStackTrace()));
+            fail(deadlocked.length + " threads deadlocked");
+        }
+        for (Worker worker : workers)
+            assertFalse(worker.getName() + " did not stop", worker.isAlive());
+
+        long blockedCount = 0, blockedTime = 0;
+        for (Worker worker : workers) {
+            blockedCount += worker.blockedCount;
+            blockedTime += worker.blockedTime;
+        }
+        int operations = created.get() + reconfigured.get() + deleted.get();
+        System.out.println(operations + " configuration operations in " + duration + "ms, " + operations * 1000L
+                / duration + "/s (" + created + " created, " + reconfigured + " reconfigured, " + deleted
+                + " deleted); " + scheduled + " builds scheduled, " + graphs + " dependency graphs built");
+        System.out.println("Contention: blocked " + blockedCount + " times, " + blockedTime + "ms");
+
+        if (!concurrentModifications.isEmpty()) {
+            concurrentModifications.get(0).printStackTrace();
+            fail(concurrentModifications.size() + " ConcurrentModificationException");
+        }
+        for (Throwable e : errors)
+            e.printStackTrace();
+        assertTrue(errors.size() + " errors, first: " + (errors.isEmpty() ? null : errors.get(0)), errors.isEmpty());
+    }
+}
@@ -0,0 +1,106 @@
+package hudson.model;
+
+import hudson.util.SubversionPollingCoordinator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * Polls many projects sharing one Subversion repository through a
+ * {@link SubversionPollingCoordinator} and compares the number of repository
+ * round-trips with what independent polling would cost.
+ */
+public class CoordinatedPollingTest extends SubversionTestCase {
+	private static final int PROJECT_COUNT = 20;
+
+	List<FreeStyleProject> projects = new ArrayList<FreeStyleProject>();
+	List<File> workingCopies = new ArrayList<File>();
+	SubversionPollingCoordinator coordinator;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		coordinator = new SubversionPollingCoordinator();
+		for (int i = 0; i < PROJECT_COUNT; i++) {
+			FreeStyleProject project = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, "module" + i);
+			setCommand(project, "echo Hello World");
+			workingCopies.add(createSubversionProject(project));
+			projects.add(project);
+			coordinator.register(project, getRepositoryLocation(), project.getName());
+		}
+		svnCommit("create projects");
+	}
+
+	private void touch(File wc, String name) throws IOException {
+		File file = new File(wc, name);
+		exec("touch", file.getPath());
+		svnAdd(file);
+	}
+
+	public void testOnlyChangedProjectsAreScheduled() throws Exception {
+		assertTrue("First tick only sets the baseline", coordinator.poll().isEmpty());
+
+		touch(workingCopies.get(3), "hello");
+		touch(workingCopies.get(7), "hello");
+		svnCommit("hello");
+
+		List<AbstractProject<?,?>> affected = coordinator.poll();
+		assertEquals(2, affected.size());
+		assertTrue(affected.contains(projects.get(3)));
+		assertTrue(affected.contains(projects.get(7)));
+		waitForBuild(1, projects.get(3));
+		waitForBuild(1, projects.get(7));
+
+		assertTrue("Nothing changed since last tick", coordinator.poll().isEmpty());
+	}
+
+	public void testSimilarProjectNamesAreNotConfused() throws Exception {
+		coordinator.poll();
+		// module1 must not be scheduled for changes in module10..module19
+		touch(workingCopies.get(12), "hello");
+		svnCommit("hello");
+
+		coordinator.setScheduleBuilds(false);
+		List<AbstractProject<?,?>> affected = coordinator.poll();
+		assertEquals(1, affected.size());
+		assertEquals(projects.get(12), affected.get(0));
+	}
+
+	/**
+	 * Shows the saved calls: a tick costs one head revision lookup per
+	 * repository root, plus one log fetch when something moved, where
+	 * independent polling costs one lookup per project.
+	 */
+	public void testSavedRepositoryCalls() throws Exception {
+		final int TICKS = 5;
+		coordinator.setScheduleBuilds(false);
+
+		int independentCalls = 0;
+		for (int tick = 0; tick < TICKS; tick++) {
+			touch(workingCopies.get(tick), "tick" + tick);
+			svnCommit("tick " + tick);
+			for (FreeStyleProject p : projects) {
+				SVNRepository repository = SVNRepositoryFactory.create(
+						SVNURL.parseURIDecoded(getRepositoryLocation() + "/" + p.getName()));
+				repository.getLatestRevision();
+				repository.closeSession();
+				independentCalls++;
+			}
+			coordinator.poll();
+		}
+
+		System.out.println("Independent polling: " + independentCalls + " calls for "
+				+ PROJECT_COUNT + " projects over " + TICKS + " ticks");
+		System.out.println("Coordinated polling: " + coordinator.getRepositoryCalls() + " calls");
+		assertEquals(PROJECT_COUNT, coordinator.getProjectCount());
+		// first tick has no log fetch
+		assertEquals(TICKS * 2 - 1, coordinator.getRepositoryCalls());
+		assertTrue(coordinator.getRepositoryCalls() < independentCalls);
+	}
+}
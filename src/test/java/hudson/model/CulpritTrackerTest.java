@@ -0,0 +1,246 @@
+package hudson.model;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.scm.ChangeLogParser;
+import hudson.scm.NullSCM;
+import hudson.scm.SubversionChangeLogParser;
+import hudson.tasks.Mailer;
+import hudson.util.CulpritTracker;
+import hudson.util.MailQueue;
+import hudson.util.NoOpBuilder;
+import hudson.util.QueuedMailer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.mail.Address;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Long failure streaks, comparing the culprits maintained by a
+ * {@link CulpritTracker} as builds complete with the ones found by walking
+ * back over previous builds, and the time both take. The mails of a
+ * {@link QueuedMailer} with a tracker go to the tracker's culprits, and the
+ * time spent notifying stays flat along the streak.
+ */
+public class CulpritTrackerTest extends HudsonTestCase {
+    private static final int STREAK = 200;
+
+    private static final File USER1 = new File("src/test/java/hudson/model/changelog-user1.xml");
+    private static final File USER2 = new File("src/test/java/hudson/model/changelog-user2.xml");
+
+    File nextChangeLog;
+
+    FreeStyleProject project;
+
+    CulpritTracker tracker;
+
+    MailQueue queue;
+
+    MimeMessage mail;
+
+    /**
+     * time the mailer took for each build, in microseconds
+     */
+    List<Long> notificationTimes = Collections.synchronizedList(new ArrayList<Long>());
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        setQuietPeriod(0);
+        project = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, "test");
+        project.setScm(new NullSCM() {
+            @Override
+            public boolean checkout(AbstractBuild build, Launcher launcher, FilePath remoteDir, BuildListener listener,
+                    File changeLogFile) throws IOException {
+                if (nextChangeLog != null)
+                    FileUtils.copyFile(nextChangeLog, changeLogFile);
+                else
+                    createEmptyChangeLog(changeLogFile, listener, "log");
+                return true;
+            }
+
+            public ChangeLogParser createChangeLogParser() {
+                return new SubversionChangeLogParser();
+            }
+        });
+        tracker = new CulpritTracker();
+        queue = new MailQueue(new MailQueue.CapturingTransport(), 100);
+        QueuedMailer mailer = new QueuedMailer(queue) {
+            @Override
+            public <P extends Project<P, B>, B extends Build<P, B>> boolean _perform(B build, Launcher launcher,
+                    BuildListener listener) throws InterruptedException {
+                long start = System.nanoTime();
+                try {
+                    return super._perform(build, launcher, listener);
+                } finally {
+                    notificationTimes.add((System.nanoTime() - start) / 1000);
+                }
+            }
+
+            @Override
+            protected void composed(MimeMessage m) {
+                mail = m;
+            }
+        };
+        mailer.recipients = "";
+        mailer.sendToIndividuals = true;
+        mailer.setCulpritTracker(tracker);
+        project.addPublisher(mailer);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        queue.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Run a build of the given changes, without forking a process
+     */
+    private Build build(boolean succeed, File changeLog) {
+        setBuilder(project, new NoOpBuilder(null, succeed));
+        nextChangeLog = changeLog;
+        return build(project);
+    }
+
+    /**
+     * Record all builds from the given one with a fresh tracker.
+     *
+     * @return the culprits of the last build
+     */
+    private Set<User> replay(AbstractBuild<?,?> from) {
+        CulpritTracker replay = new CulpritTracker();
+        Set<User> culprits = null;
+        for (AbstractBuild<?,?> b = from; b != null; b = b.getNextBuild())
+            culprits = replay.record(b);
+        return culprits;
+    }
+
+    private void assertSameCulprits(Set<User> expected, Set<User> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertTrue(expected + " != " + actual, expected.containsAll(actual));
+    }
+
+    private void assertRecipients(Set<User> culprits) throws Exception {
+        assertNotNull("No mail", mail);
+        Address[] recipients = mail.getAllRecipients();
+        assertNotNull("No recipients", recipients);
+        assertEquals(culprits.size(), recipients.length);
+        for (User culprit : culprits)
+            assertTrue(culprit + " not notified", Arrays.asList(recipients).contains(
+                    new InternetAddress(culprit.getProperty(Mailer.UserProperty.class).getAddress())));
+    }
+
+    private static long average(List<Long> times) {
+        long sum = 0;
+        for (long time : times)
+            sum += time;
+        return sum / Math.max(1, times.size());
+    }
+
+    public void testStreak() throws Exception {
+        assertSuccess(build(true, USER1).getResult());
+        assertTrue(tracker.getCulprits(project.getName()).isEmpty());
+
+        Build b = build(false, USER1);
+        assertFailure(b.getResult());
+        assertEquals(1, tracker.getCulprits(project.getName()).size());
+        assertSameCulprits(CulpritTracker.walkBack(b), tracker.getCulprits(project.getName()));
+
+        b = build(false, USER2);
+        assertEquals(2, tracker.getCulprits(project.getName()).size());
+        assertSameCulprits(CulpritTracker.walkBack(b), tracker.getCulprits(project.getName()));
+        assertRecipients(CulpritTracker.walkBack(b));
+
+        // back to normal, streak is over
+        b = build(true, null);
+        assertSuccess(b.getResult());
+        assertTrue(tracker.getCulprits(project.getName()).isEmpty());
+        // but its notification still goes to those who broke the build
+        assertSameCulprits(CulpritTracker.walkBack(b), replay(project.getBuildByNumber(1)));
+        assertEquals(2, CulpritTracker.walkBack(b).size());
+        assertRecipients(CulpritTracker.walkBack(b));
+
+        b = build(false, USER2);
+        assertSameCulprits(CulpritTracker.walkBack(b), tracker.getCulprits(project.getName()));
+        assertEquals(1, tracker.getCulprits(project.getName()).size());
+    }
+
+    /**
+     * The culprits returned for a build do not grow with the next failures
+     */
+    public void testRecordReturnsCopy() throws Exception {
+        Build b1 = build(false, USER1);
+        Build b2 = build(false, USER2);
+        CulpritTracker replay = new CulpritTracker();
+        Set<User> first = replay.record(b1);
+        assertEquals(2, replay.record(b2).size());
+        assertEquals(1, first.size());
+    }
+
+    /**
+     * Hundreds of consecutive failures: walking back costs more and more per
+     * build, recording stays constant.
+     */
+    public void testLongStreak() throws Exception {
+        assertSuccess(build(true, null).getResult());
+        Build first = null, last = null;
+        for (int i = 0; i < STREAK; i++) {
+            last = build(false, i % 2 == 0 ? USER1 : USER2);
+            assertFailure(last.getResult());
+            if (first == null)
+                first = last;
+        }
+        assertSameCulprits(CulpritTracker.walkBack(last), tracker.getCulprits(project.getName()));
+        assertRecipients(CulpritTracker.walkBack(last));
+
+        // the first notifications of the streak against the last ones
+        int sample = STREAK / 10;
+        long early = average(notificationTimes.subList(1, 1 + sample));
+        long late = average(notificationTimes.subList(notificationTimes.size() - sample, notificationTimes.size()));
+        System.out.println("Notification of a failing build: " + early + "us early in the streak, " + late
+                + "us after " + STREAK + " failures");
+
+        // replay the notifications of the whole streak both ways
+        long start = System.currentTimeMillis();
+        for (AbstractBuild<?,?> b = first; b != null; b = b.getNextBuild())
+            CulpritTracker.walkBack(b);
+        long walkBack = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        Set<User> culprits = replay(first);
+        long incremental = System.currentTimeMillis() - start;
+
+        System.out.println(STREAK + " failing builds: walking back " + walkBack + "ms, incremental " + incremental
+                + "ms");
+        assertSameCulprits(CulpritTracker.walkBack(last), culprits);
+    }
+
+    /**
+     * The mail goes to the culprits of the tracker, not to the ones walking
+     * back over the builds would find: once the tracker forgot the streak,
+     * only the author of the last build is notified.
+     */
+    public void testNoWalkBack() throws Exception {
+        assertSuccess(build(true, null).getResult());
+        for (int i = 0; i < 10; i++)
+            assertFailure(build(false, USER1).getResult());
+        tracker.forget(project.getName());
+
+        Build last = build(false, USER2);
+        assertEquals(2, CulpritTracker.walkBack(last).size());
+        Set<User> culprits = tracker.getCulprits(project.getName());
+        assertEquals(1, culprits.size());
+        assertRecipients(culprits);
+    }
+}
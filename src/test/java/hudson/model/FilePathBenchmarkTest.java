@@ -0,0 +1,244 @@
+package hudson.model;
+
+import hudson.FilePath;
+import hudson.util.BenchmarkResults;
+import hudson.util.LocalAgent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.apache.tools.tar.TarOutputStream;
+
+/**
+ * Throughput of {@link FilePath} operations, on local paths and on paths of an
+ * in-process {@link LocalAgent}, for several file counts and sizes: single file
+ * copy, recursive copy (a tar stream when crossing the channel, like artifact
+ * archiving), zip archive of a directory and <tt>child()</tt> traversal.
+ *
+ * FilePath has no public tar or untar method: <tt>copyRecursiveTo()</tt>
+ * writes and reads its tar stream internally with Ant's tar classes. Tar and
+ * untar are timed on their own with the same classes, in memory, to separate
+ * their cost from the channel's.
+ *
+ * Reports MB/s and the overhead per file.
+ */
+public class FilePathBenchmarkTest extends HudsonTestCase {
+    private static final int KB = 1024;
+
+    /**
+     * file count and file size of each data set
+     */
+    private static final int[][] DATA_SETS = { { 1000, KB }, { 100, 100 * KB }, { 10, 1024 * KB } };
+
+    LocalAgent agent;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        agent = LocalAgent.inProcess("agent", createTempDir("hudson-agent"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        agent.close();
+        super.tearDown();
+    }
+
+    private void report(String operation, int files, long bytes, long millis) {
+        millis = Math.max(millis, 1);
+        System.out.println(operation + ": " + files + " files, " + bytes / KB + "KB in " + millis + "ms, "
+                + (bytes / (double) (KB * KB)) / millis * 1000 + "MB/s, " + millis * 1000 / files + "us per file");
+        BenchmarkResults.getInstance().lowerIsBetter(
+                "FilePathBenchmarkTest." + operation.replaceAll("\\W+", "_") + "." + files + "files.us_per_file",
+                millis * 1000 / files);
+    }
+
+    private File createFiles(int count, int size) throws IOException {
+        File dir = createTempDir("hudson-files");
+        byte[] content = new byte[size];
+        new Random(count).nextBytes(content);
+        for (int i = 0; i < count; i++) {
+            File sub = new File(dir, "dir" + i / 100);
+            sub.mkdir();
+            OutputStream out = new FileOutputStream(new File(sub, "file" + i));
+            out.write(content);
+            out.close();
+        }
+        return dir;
+    }
+
+    /**
+     * @return a new empty directory, local or on the agent
+     */
+    private FilePath newDir(boolean remote, String name) throws Exception {
+        if (!remote)
+            return new FilePath(createTempDir(name));
+        FilePath dir = agent.getRoot().child(name + System.nanoTime());
+        dir.mkdirs();
+        return dir;
+    }
+
+    private void copyRecursive(FilePath from, FilePath to, String label, int files, long bytes) throws Exception {
+        long start = System.currentTimeMillis();
+        int copied = from.copyRecursiveTo("**/*", to);
+        report(label, files, bytes, System.currentTimeMillis() - start);
+        assertEquals(files, copied);
+    }
+
+    public void testRecursiveCopy() throws Exception {
+        for (int[] set : DATA_SETS) {
+            int files = set[0];
+            long bytes = (long) files * set[1];
+            FilePath local = new FilePath(createFiles(files, set[1]));
+            copyRecursive(local, newDir(false, "copy"), "copy local -> local", files, bytes);
+            FilePath remote = newDir(true, "copy");
+            copyRecursive(local, remote, "copy local -> agent", files, bytes);
+            copyRecursive(remote, newDir(false, "copy"), "copy agent -> local", files, bytes);
+        }
+    }
+
+    public void testSingleFileCopy() throws Exception {
+        for (int[] set : DATA_SETS) {
+            int files = set[0];
+            long bytes = (long) files * set[1];
+            File source = createFiles(files, set[1]);
+            FilePath local = newDir(false, "single");
+            FilePath remote = newDir(true, "single");
+            long localTime = 0, remoteTime = 0;
+            for (int i = 0; i < files; i++) {
+                FilePath f = new FilePath(source).child("dir" + i / 100).child("file" + i);
+                long start = System.currentTimeMillis();
+                f.copyTo(local.child("file" + i));
+                localTime += System.currentTimeMillis() - start;
+                start = System.currentTimeMillis();
+                f.copyTo(remote.child("file" + i));
+                remoteTime += System.currentTimeMillis() - start;
+            }
+            report("copyTo local -> local", files, bytes, localTime);
+            report("copyTo local -> agent", files, bytes, remoteTime);
+        }
+    }
+
+    private void zip(FilePath dir, String label, int files, long bytes) throws Exception {
+        CountingOutputStream out = new CountingOutputStream(new NullOutputStream());
+        long start = System.currentTimeMillis();
+        dir.createZipArchive(out);
+        long duration = System.currentTimeMillis() - start;
+        assertTrue(out.getCount() > 0);
+        System.out.println(label + ": " + out.getCount() / KB + "KB zipped");
+        report(label, files, bytes, duration);
+    }
+
+    public void testZipArchive() throws Exception {
+        for (int[] set : DATA_SETS) {
+            int files = set[0];
+            long bytes = (long) files * set[1];
+            FilePath local = new FilePath(createFiles(files, set[1]));
+            zip(local, "zip local", files, bytes);
+            FilePath remote = newDir(true, "zip");
+            local.copyRecursiveTo("**/*", remote);
+            zip(remote, "zip on agent", files, bytes);
+        }
+    }
+
+    private void traverse(FilePath dir, String label, int files) throws Exception {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < files; i++)
+            assertTrue(dir.child("dir" + i / 100).child("file" + i).exists());
+        report(label, files, 0, System.currentTimeMillis() - start);
+    }
+
+    public void testChildTraversal() throws Exception {
+        int files = DATA_SETS[0][0];
+        FilePath local = new FilePath(createFiles(files, 1));
+        traverse(local, "child().exists() local", files);
+        FilePath remote = newDir(true, "traverse");
+        local.copyRecursiveTo("**/*", remote);
+        traverse(remote, "child().exists() on agent", files);
+    }
+
+    private int addToTar(TarOutputStream tar, File dir, String path) throws IOException {
+        int count = 0;
+        for (File f : dir.listFiles()) {
+            String name = path + f.getName();
+            if (f.isDirectory()) {
+                count += addToTar(tar, f, name + "/");
+                continue;
+            }
+            TarEntry entry = new TarEntry(f);
+            entry.setName(name);
+            tar.putNextEntry(entry);
+            InputStream in = new FileInputStream(f);
+            try {
+                IOUtils.copy(in, tar);
+            } finally {
+                in.close();
+            }
+            tar.closeEntry();
+            count++;
+        }
+        return count;
+    }
+
+    private int extractTar(byte[] data, File dir) throws IOException {
+        TarInputStream in = new TarInputStream(new ByteArrayInputStream(data));
+        int count = 0;
+        try {
+            TarEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                File f = new File(dir, entry.getName());
+                if (entry.isDirectory()) {
+                    f.mkdirs();
+                    continue;
+                }
+                f.getParentFile().mkdirs();
+                OutputStream out = new FileOutputStream(f);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                }
+                count++;
+            }
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+
+    public void testTarUntar() throws Exception {
+        for (int[] set : DATA_SETS) {
+            int files = set[0];
+            long bytes = (long) files * set[1];
+            File source = createFiles(files, set[1]);
+
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            long start = System.currentTimeMillis();
+            TarOutputStream tar = new TarOutputStream(buf);
+            tar.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+            int added = addToTar(tar, source, "");
+            tar.close();
+            report("tar", files, bytes, System.currentTimeMillis() - start);
+            assertEquals(files, added);
+
+            File target = createTempDir("untar");
+            start = System.currentTimeMillis();
+            int extracted = extractTar(buf.toByteArray(), target);
+            report("untar", files, bytes, System.currentTimeMillis() - start);
+            assertEquals(files, extracted);
+            assertEquals(set[1], new File(target, "dir0/file0").length());
+        }
+    }
+}
@@ -5,22 +5,18 @@ import hudson.Launcher;
 import hudson.scm.ChangeLogParser;
 import hudson.scm.NullSCM;
 import hudson.scm.SubversionChangeLogParser;
-import hudson.tasks.ArtifactArchiver;
-import hudson.tasks.MailSender;
 import hudson.tasks.Mailer;
+import hudson.util.MailQueue;
+import hudson.util.QueuedMailer;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.logging.Level;
 
-import javax.mail.Address;
-import javax.mail.MessagingException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.tools.ant.types.selectors.SelectorUtils;
 
 /**
  * Setup a free-style project and uses the Shell builder to exercise both SUCCESS and FAILURE, and check that the proper
@@ -33,6 +29,23 @@ public class FreeStyleProjectTest extends HudsonTestCase {
 
     File nextChangeLog;
 
+    MailQueue.CapturingTransport transport;
+
+    MailQueue queue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        transport = new MailQueue.CapturingTransport();
+        queue = new MailQueue(transport, 10);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        queue.shutdown();
+        super.tearDown();
+    }
+
     public void testCreateProject() throws Exception {
         FreeStyleProject project = new FreeStyleProject(Hudson.getInstance(), "test");
         project.setScm(new NullSCM() {
@@ -60,65 +73,10 @@ public class FreeStyleProjectTest extends HudsonTestCase {
                 return new SubversionChangeLogParser();
             }
         });
-        // FIXME add a factory method to create the MailSender to avoid big
-        // copy/paste of _perform()
-        Mailer mailer = new Mailer() {
-            public <P extends Project<P, B>, B extends Build<P, B>> boolean _perform(B build, Launcher launcher,
-                    BuildListener listener) throws InterruptedException {
-                if (debug)
-                    listener.getLogger().println("Running mailer");
-                return new MailSender<P, B>(recipients, dontNotifyEveryUnstableBuild, sendToIndividuals) {
-                    /** Check whether a path (/-separated) will be archived. */
-                    @Override
-                    public boolean artifactMatches(String path, B build) {
-                        ArtifactArchiver aa = (ArtifactArchiver) build.getProject().getPublishers().get(
-                                ArtifactArchiver.DESCRIPTOR);
-                        if (aa == null) {
-                            LOGGER.finer("No ArtifactArchiver found");
-                            return false;
-                        }
-                        String artifacts = aa.getArtifacts();
-                        for (String include : artifacts.split("[, ]+")) {
-                            String pattern = include.replace(File.separatorChar, '/');
-                            if (pattern.endsWith("/")) {
-                                pattern += "**";
-                            }
-                            if (SelectorUtils.matchPath(pattern, path)) {
-                                LOGGER.log(Level.FINER, "DescriptorImpl.artifactMatches true for {0} against {1}",
-                                        new Object[] { path, pattern });
-                                return true;
-                            }
-                        }
-                        LOGGER.log(Level.FINER, "DescriptorImpl.artifactMatches for {0} matched none of {1}",
-                                new Object[] { path, artifacts });
-                        return false;
-                    }
-
-                    /**
-                     * Override parent method to avoid sending the email for real, and to hold a reference to last email
-                     */
-                    public boolean execute(B build, BuildListener listener) throws InterruptedException {
-                        try {
-                            mail = getMail(build, listener);
-                            if (mail != null) {
-                                Address[] allRecipients = mail.getAllRecipients();
-                                if (allRecipients != null) {
-                                    StringBuffer buf = new StringBuffer("Sending e-mails to:");
-                                    for (Address a : allRecipients)
-                                        buf.append(' ').append(a);
-                                    listener.getLogger().println(buf);
-                                } else {
-                                    listener.getLogger().println(
-                                            "An attempt to send an e-mail" + " to empty list of recipients, ignored.");
-                                }
-                            }
-                        } catch (MessagingException e) {
-                            e.printStackTrace(listener.error(e.getMessage()));
-                        }
-
-                        return true;
-                    }
-                }.execute(build, listener);
+        Mailer mailer = new QueuedMailer(queue) {
+            @Override
+            protected void composed(MimeMessage m) {
+                mail = m;
             }
         };
         mailer.recipients = "";
@@ -175,5 +133,10 @@ public class FreeStyleProjectTest extends HudsonTestCase {
         assertFailure(result);
         assertTrue("number of recipients not 1", mail.getAllRecipients().length == 1);
         assertEquals(mail.getAllRecipients()[0], new InternetAddress("user1@company.com"));
+
+        // only mails with recipients went through the queue
+        assertTrue("Mail queue not flushed", queue.flush(10000));
+        assertEquals(4, transport.getMessages().size());
+        assertEquals(mail, transport.getMessages().get(3));
     }
 }
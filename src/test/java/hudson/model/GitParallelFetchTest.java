@@ -0,0 +1,81 @@
+package hudson.model;
+
+import hudson.util.GitParallelFetcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Fetching several remotes with {@link GitParallelFetcher}, one at a time and
+ * all at once: every remote branch must point to the head of its repository,
+ * no fetch may write <tt>FETCH_HEAD</tt>, and the timings are reported. Also
+ * checks that GitSCM builds a workspace fetched beforehand, with the two
+ * remotes of {@link GitSCMTest#bugTestGitSCMNestedRepository()}.
+ */
+public class GitParallelFetchTest extends GitTestCase {
+	private static final int REMOTES = 8;
+
+	List<File> repos = new ArrayList<File>();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		for (int r = 0; r < REMOTES; r++) {
+			File repo = createGitRepository();
+			for (int commit = 0; commit < 10; commit++) {
+				for (int i = 0; i < 20; i++)
+					createTestFile(repo, "file" + i, "Commit " + commit + " in repository " + r);
+				commitAll(repo, "Commit " + commit);
+			}
+			repos.add(repo);
+		}
+	}
+
+	private long fetch(File workspace, int maxConcurrent) throws Exception {
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		long start = System.currentTimeMillis();
+		new GitParallelFetcher(maxConcurrent).fetch(workspace, getRepositories(), new PrintStream(log));
+		long duration = System.currentTimeMillis() - start;
+		for (int r = 0; r < REMOTES; r++) {
+			assertEquals("remote" + r + " in " + workspace, exec(repos.get(r), "git", "rev-parse", "master"), exec(
+					workspace, "git", "rev-parse", "refs/remotes/remote" + r + "/master"));
+		}
+		assertFalse("FETCH_HEAD written", new File(workspace, ".git/FETCH_HEAD").exists());
+		return duration;
+	}
+
+	public void testParallelFetch() throws Exception {
+		for (int r = 0; r < REMOTES; r++)
+			addRepository("remote" + r, repos.get(r).getAbsolutePath());
+
+		File sequential = createTempDir("hudson-sequential");
+		File parallel = createTempDir("hudson-parallel");
+		long sequentialTime = fetch(sequential, 1);
+		long parallelTime = fetch(parallel, REMOTES);
+
+		String refs = exec(sequential, "git", "for-each-ref", "refs/remotes");
+		assertEquals(REMOTES, refs.split("\n").length);
+		assertEquals(refs, exec(parallel, "git", "for-each-ref", "refs/remotes"));
+		System.out.println(REMOTES + " remotes: sequential fetch " + sequentialTime + "ms, parallel fetch "
+				+ parallelTime + "ms");
+	}
+
+	public void testFetchedWorkspace() throws Exception {
+		Project p = new FreeStyleProject(Hudson.getInstance(), "test");
+		addRepository("origin", repos.get(0).getAbsolutePath());
+		addRepository("another", repos.get(1).getAbsolutePath());
+		p.setScm(createGitSCM("origin/master"));
+		setCommand(p, "echo Hello");
+
+		File workspace = new File(p.getRootDir(), "workspace");
+		new GitParallelFetcher(2).fetch(workspace, getRepositories(), System.out);
+		assertSuccess(build(p).getResult());
+		assertEquals("Commit 9 in repository 0", FileUtils.readFileToString(new File(workspace, "file0"), null));
+		assertTrue(exec(workspace, "git", "branch", "-r").contains("another/master"));
+	}
+}
@@ -0,0 +1,88 @@
+package hudson.model;
+
+import hudson.scm.ChangeLogSet;
+import hudson.util.GitRefPoller;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * Polling a repository with many branches through {@link GitRefPoller}, which
+ * only lets GitSCM fetch when a branch head moved, compared with the full poll
+ * of GitSCM.
+ *
+ * The number of branches is set by the <tt>hudson.tester.gitBranches</tt>
+ * system property, 300 by default.
+ */
+public class GitRefPollingTest extends GitTestCase {
+	private static final int BRANCHES = Integer.getInteger("hudson.tester.gitBranches", 300);
+	private static final int POLLS = 20;
+
+	File externalRepo;
+	Project p;
+	GitRefPoller poller;
+	TaskListener listener = new StreamTaskListener(new NullOutputStream());
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		externalRepo = createGitRepository();
+		commit("test", "Commit 1");
+		for (int i = 0; i < BRANCHES; i++)
+			exec(externalRepo, "git", "branch", "branch" + i);
+
+		addRepository("origin", externalRepo.getAbsolutePath());
+		p = new FreeStyleProject(Hudson.getInstance(), "test");
+		p.setScm(createGitSCM("origin/HEAD"));
+		setCommand(p, "echo Hello");
+		poller = new GitRefPoller(getRepositories());
+	}
+
+	private void commit(String file, String message) throws Exception {
+		createTestFile(externalRepo, file, message);
+		commitAll(externalRepo, message);
+	}
+
+	public void testRefPolling() throws Exception {
+		assertSuccess(build(p).getResult());
+		assertEquals(BRANCHES + 1, poller.listHeads().size());
+
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < POLLS; i++)
+			assertFalse(p.pollSCMChanges(listener));
+		long full = System.currentTimeMillis() - start;
+
+		// first poll sets the reference heads
+		assertFalse(poller.poll(p, listener));
+		start = System.currentTimeMillis();
+		for (int i = 0; i < POLLS; i++)
+			assertFalse(poller.poll(p, listener));
+		long refs = System.currentTimeMillis() - start;
+		assertEquals(1, poller.getFullPolls());
+
+		System.out.println(BRANCHES + " branches, unchanged: full poll " + full / POLLS + "ms, ref poll " + refs
+				/ POLLS + "ms");
+
+		exec(externalRepo, "git", "checkout", "branch" + BRANCHES / 2);
+		commit("test2", "Commit in branch");
+		exec(externalRepo, "git", "checkout", "master");
+		assertTrue(poller.poll(p, listener));
+		assertEquals(2, poller.getFullPolls());
+		// the build it triggered never ran: the change is still there
+		assertTrue("Change lost", poller.poll(p, listener));
+		assertEquals(3, poller.getFullPolls());
+
+		Build b = build(p);
+		assertSuccess(b.getResult());
+		assertEquals("Commit in branch", ((ChangeLogSet.Entry) b.getChangeSet().getItems()[0]).getMsg().trim());
+
+		// GitSCM confirms once that the heads are built, then polls are cheap
+		// again
+		assertFalse("Not expecting changes at this point", poller.poll(p, listener));
+		assertEquals(4, poller.getFullPolls());
+		assertFalse(poller.poll(p, listener));
+		assertEquals(4, poller.getFullPolls());
+	}
+}
@@ -0,0 +1,110 @@
+package hudson.model;
+
+import hudson.util.GitReferenceCache;
+import hudson.util.TempDirManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Projects cloning the same remote, with and without a shared
+ * {@link GitReferenceCache}: builds of master and of a branch must see the
+ * same files and changes, the seeded workspaces must use less disk, and
+ * cloning time is reported.
+ */
+public class GitReferenceCacheTest extends GitTestCase {
+	private static final int PROJECTS = 6;
+
+	File externalRepo;
+	GitReferenceCache cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		externalRepo = createGitRepository();
+		for (int commit = 0; commit < 20; commit++) {
+			for (int i = 0; i < 50; i++)
+				createTestFile("file" + i, commit);
+			commitAll(externalRepo, "Commit " + commit);
+		}
+		exec(externalRepo, "git", "branch", "newbranch");
+		addRepository("origin", externalRepo.getAbsolutePath());
+		cache = new GitReferenceCache(createTempDir("hudson-gitcache"));
+	}
+
+	private void createTestFile(String name, int version) throws Exception {
+		FileOutputStream out = new FileOutputStream(new File(externalRepo, name));
+		byte[] line = ("Hello, World! version " + version + " of " + name + "\n").getBytes();
+		for (int i = 0; i < 200; i++)
+			out.write(line);
+		out.close();
+	}
+
+	private Project createProject(String name, String branch) throws Exception {
+		Project p = new FreeStyleProject(Hudson.getInstance(), name);
+		p.setScm(createGitSCM(branch));
+		setCommand(p, "echo Hello");
+		return p;
+	}
+
+	private File workspace(Project p) {
+		return new File(p.getRootDir(), "workspace");
+	}
+
+	/**
+	 * Build the projects once each
+	 *
+	 * @return build time in milliseconds, including seeding
+	 */
+	private long buildAll(List<Project> projects, boolean seed) throws Exception {
+		long start = System.currentTimeMillis();
+		for (Project p : projects) {
+			if (seed)
+				assertTrue(cache.seed(externalRepo.getAbsolutePath(), workspace(p)));
+			assertSuccess(build(p).getResult());
+			assertTrue(p.getWorkspace().child("file49").exists());
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private long diskUsage(List<Project> projects) {
+		long bytes = 0;
+		for (Project p : projects)
+			bytes += TempDirManager.usage(new File(workspace(p), ".git")).bytes;
+		return bytes;
+	}
+
+	public void testSharedObjects() throws Exception {
+		List<Project> plain = new ArrayList<Project>();
+		List<Project> seeded = new ArrayList<Project>();
+		for (int i = 0; i < PROJECTS; i++) {
+			String branch = i % 2 == 0 ? "origin/master" : "origin/newbranch";
+			plain.add(createProject("plain" + i, branch));
+			seeded.add(createProject("seeded" + i, branch));
+		}
+
+		long plainTime = buildAll(plain, false);
+		long seededTime = buildAll(seeded, true);
+		long plainDisk = diskUsage(plain);
+		long seededDisk = diskUsage(seeded) + TempDirManager.usage(cache.getMirror(externalRepo.getAbsolutePath())).bytes;
+		System.out.println(PROJECTS + " clones: " + plainTime + "ms, " + plainDisk / 1024 + "KB; with reference: "
+				+ seededTime + "ms, " + seededDisk / 1024 + "KB including the mirror");
+		assertTrue("Seeded workspaces use more disk", seededDisk < plainDisk);
+
+		// changes on the branch are fetched into seeded workspaces too
+		exec(externalRepo, "git", "checkout", "newbranch");
+		createTestFile("branchfile", 0);
+		commitAll(externalRepo, "Commit in newbranch");
+		for (int i = 0; i < PROJECTS; i++) {
+			boolean onBranch = i % 2 == 1;
+			for (Project p : new Project[] { plain.get(i), seeded.get(i) }) {
+				Build b = build(p);
+				assertSuccess(b.getResult());
+				assertEquals(onBranch ? 1 : 0, b.getChangeSet().getItems().length);
+				assertEquals(onBranch, p.getWorkspace().child("branchfile").exists());
+			}
+		}
+	}
+}
@@ -9,20 +9,12 @@ import hudson.tasks.Mailer;
 import hudson.util.StreamTaskListener;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.codehaus.plexus.util.IOUtil;
-import org.spearce.jgit.lib.RepositoryConfig;
-import org.spearce.jgit.transport.RemoteConfig;
-
-public class GitSCMTest extends HudsonTestCase {
+public class GitSCMTest extends GitTestCase {
 	File externalRepo;
 	File anotherRepo;
-	RepositoryConfig repoConfig;
 
 	@Override
 	/**
@@ -31,49 +23,22 @@ public class GitSCMTest extends HudsonTestCase {
 	 */
 	protected void setUp() throws Exception {
 		super.setUp();
-		externalRepo = createTempDir("hudson-gittest");
-		exec(externalRepo, "git", "init");
-		exec(externalRepo, "git", "config", "--add", "user.name", "John Doe");
-		exec(externalRepo, "git", "config", "--add", "user.email", "john@doe.com");
+		externalRepo = createGitRepository();
 		createTestFile(externalRepo, "test");
 		exec(externalRepo, "git", "add", "test");
 		exec(externalRepo, "git", "commit", "-m", "Commit 1");
 		exec(externalRepo, "git", "rm", "test");
 		exec(externalRepo, "git", "commit", "-m", "Commit 2");
 
-		anotherRepo = createTempDir("hudson-gittest");
-		exec(anotherRepo, "git", "init");
-		exec(anotherRepo, "git", "config", "--add", "user.name", "John Doe");
-		exec(anotherRepo, "git", "config", "--add", "user.email", "john@doe.com");
+		anotherRepo = createGitRepository();
 		createTestFile(anotherRepo, "help");
 		exec(anotherRepo, "git", "add", "help");
 		exec(anotherRepo, "git", "commit", "-m", "Commit");
-		newRepositories();
 		System.out.println("----------------------------------------------------------------------");
 		System.out.println("Starting test " + this.getName());
 		System.out.println("----------------------------------------------------------------------");
 	}
 
-	protected void createTestFile(File repo, String name) throws Exception {
-		File testFile = new File(repo, name);
-		FileOutputStream out = new FileOutputStream(testFile);
-		IOUtil.copy("Hello, World!", out);
-		out.close();
-	}
-	
-	private void newRepositories() throws IOException {
-        File temp = File.createTempFile("tmp", "config");
-        repoConfig = new RepositoryConfig(null, temp);
-	}
-	private void addRepository(String name, String url) throws IOException {
-       	repoConfig.setString("remote", name, "url", url);
-       	repoConfig.setString("remote", name, "fetch", "+refs/heads/*:refs/remotes/" + name + "/*");
-        repoConfig.save();
-	}
-	private List<RemoteConfig> getRepositories() throws URISyntaxException {
-		return RemoteConfig.getAllRemoteConfigs(repoConfig);
-	}
-	
 	public void testPushTags() throws Exception {
         Project p = new FreeStyleProject(Hudson.getInstance(), "test");
         List<BranchSpec> branches = new ArrayList<BranchSpec>();
@@ -88,8 +53,7 @@ public class GitSCMTest extends HudsonTestCase {
         ChangeLogSet changes = b.getChangeSet();
         // First-time build does not create change sets
         assertEquals(0, changes.getItems().length);
-        // FIXME wait for the publisher to tag origin repo
-        Thread.sleep(1000);
+        // build() returns once the build is over, publishers included
         assertEquals("hudson-test-1-SUCCESS\n", exec(externalRepo, "git", "tag", "-l"));
 	}
 
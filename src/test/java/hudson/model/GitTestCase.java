@@ -0,0 +1,87 @@
+package hudson.model;
+
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.opt.PreBuildMergeOptions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.spearce.jgit.lib.RepositoryConfig;
+import org.spearce.jgit.transport.RemoteConfig;
+
+public abstract class GitTestCase extends HudsonTestCase {
+	/**
+	 * remotes of the GitSCMs created by the test
+	 */
+	protected RepositoryConfig repoConfig;
+
+	@Override
+	/**
+	 * Provides an empty <tt>RepositoryConfig repoConfig</tt> to the test case,
+	 * see {@link #addRepository(String, String)}.
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		File temp = new File(createTempDir("hudson-gitconfig"), "config");
+		repoConfig = new RepositoryConfig(null, temp);
+	}
+
+	/**
+	 * Creates an empty Git repository, with John Doe as committer.
+	 *
+	 * @return the repository directory
+	 */
+	protected File createGitRepository() throws IOException {
+		File repo = createTempDir("hudson-gittest");
+		exec(repo, "git", "init");
+		exec(repo, "git", "config", "--add", "user.name", "John Doe");
+		exec(repo, "git", "config", "--add", "user.email", "john@doe.com");
+		return repo;
+	}
+
+	protected void createTestFile(File repo, String name) throws Exception {
+		createTestFile(repo, name, "Hello, World!");
+	}
+
+	protected void createTestFile(File repo, String name, String content) throws Exception {
+		FileOutputStream out = new FileOutputStream(new File(repo, name));
+		IOUtil.copy(content, out);
+		out.close();
+	}
+
+	/**
+	 * Commits all the changes of the repository.
+	 */
+	protected void commitAll(File repo, String message) throws IOException {
+		exec(repo, "git", "add", ".");
+		exec(repo, "git", "commit", "-m", message);
+	}
+
+	/**
+	 * Adds a remote to {@link #repoConfig}, fetching all its branches.
+	 */
+	protected void addRepository(String name, String url) throws IOException {
+		repoConfig.setString("remote", name, "url", url);
+		repoConfig.setString("remote", name, "fetch", "+refs/heads/*:refs/remotes/" + name + "/*");
+		repoConfig.save();
+	}
+
+	protected List<RemoteConfig> getRepositories() throws URISyntaxException {
+		return RemoteConfig.getAllRemoteConfigs(repoConfig);
+	}
+
+	/**
+	 * @return a GitSCM on the remotes added so far, building the given branch
+	 */
+	protected GitSCM createGitSCM(String branch) throws URISyntaxException {
+		List<BranchSpec> branches = new ArrayList<BranchSpec>();
+		branches.add(new BranchSpec(branch));
+		return new GitSCM(getRepositories(), branches, new PreBuildMergeOptions(), false, null, null);
+	}
+}
@@ -3,9 +3,15 @@ package hudson.model;
 import hudson.tasks.Builder;
 import hudson.tasks.Shell;
 import hudson.triggers.Trigger;
+import hudson.util.BuildLogTailer;
+import hudson.util.SubversionSessionPool;
+import hudson.util.TempDirManager;
+import hudson.util.TimingStore;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
@@ -23,11 +29,27 @@ import org.apache.tools.ant.taskdefs.PumpStreamHandler;
 import org.easymock.EasyMock;
 
 public abstract class HudsonTestCase extends TestCase {
+    /**
+     * maximum number of bytes of each build log kept, override with the
+     * <tt>hudson.tester.maxBuildLog</tt> system property
+     */
+    private static final long MAX_BUILD_LOG = Long.getLong("hudson.tester.maxBuildLog", 1024 * 1024);
+
     protected static Hudson hudson;
 
+    private OutputStream buildLogStream;
+
+    /**
+     * time spent starting Hudson and waiting for builds, in milliseconds, for
+     * the {@link TimingStore}
+     */
+    private long hudsonStartup, buildWait;
+
     @Override
     protected void setUp() throws Exception {
+        long start = System.currentTimeMillis();
         hudson = newHudson();
+        hudsonStartup = System.currentTimeMillis() - start;
 
         // Limit to 1 executor
         setNumExecutors(1);
@@ -38,10 +60,72 @@ public abstract class HudsonTestCase extends TestCase {
 
     @Override
     protected void tearDown() throws Exception {
+        shutdownHudson();
+
+        if (buildLogStream != null) {
+            buildLogStream.close();
+            buildLogStream = null;
+        }
+        TempDirManager.getInstance().cleanup();
+    }
+
+    /**
+     * Same as the JUnit one, recording the duration of each phase in the
+     * {@link TimingStore}
+     */
+    @Override
+    public void runBare() throws Throwable {
+        long start = System.currentTimeMillis();
+        setUp();
+        long setUp = System.currentTimeMillis() - start;
+        Throwable exception = null;
+        start = System.currentTimeMillis();
+        try {
+            runTest();
+        } catch (Throwable running) {
+            exception = running;
+        }
+        long test = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        try {
+            tearDown();
+        } catch (Throwable tearingDown) {
+            if (exception == null)
+                exception = tearingDown;
+        }
+        long tearDown = System.currentTimeMillis() - start;
+        TimingStore store = TimingStore.getInstance();
+        if (store != null)
+            store.record(getClass().getName() + "." + getName(), new String[] { "hudson", "fixture", "test",
+                    "buildWait", "tearDown" }, new long[] { hudsonStartup, setUp - hudsonStartup, test - buildWait,
+                    buildWait, tearDown });
+        if (exception != null)
+            throw exception;
+    }
+
+    /**
+     * Stop the executors of the running Hudson instance and forget it, so that
+     * another one can be started, possibly on the same home.
+     * 
+     * {@link Hudson#cleanUp()} is not called: it cancels the static
+     * {@link Trigger#timer}, which the next instance of the JVM schedules on.
+     */
+    protected void shutdownHudson() {
+        if (hudson == null)
+            return;
+        // without executors, the master computer is killed and its executor threads end
+        setNumExecutors(0);
+        // the idle sessions are on repositories of this test
+        SubversionSessionPool.getInstance().closeAll();
         // FIXME would be nice to be able to reset the Hudson instance programmatically
-        Field theInstance = Hudson.class.getDeclaredField("theInstance");
-        theInstance.setAccessible(true);
-        theInstance.set(hudson, null);
+        try {
+            Field theInstance = Hudson.class.getDeclaredField("theInstance");
+            theInstance.setAccessible(true);
+            theInstance.set(null, null);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        hudson = null;
     }
 
     protected void setNumExecutors(int i) {
@@ -59,30 +143,47 @@ public abstract class HudsonTestCase extends TestCase {
         }
     }
 
-    private Hudson newHudson() {
-        // FIXME does Hudson really need a ServletContext?
+    /**
+     * Set the default number of seconds builds wait in the queue before they
+     * can start
+     */
+    protected void setQuietPeriod(int seconds) {
+        // FIXME would be nice to have a Hudson.setQuietPeriod() method
         try {
-            return new Hudson(createTempDir("hudson"), EasyMock.createMock(ServletContext.class));
-        } catch (IOException e) {
+            Field quietPeriod = Hudson.class.getDeclaredField("quietPeriod");
+            quietPeriod.setAccessible(true);
+            quietPeriod.set(hudson, seconds);
+        } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private Hudson newHudson() {
+        return newHudson(createTempDir("hudson"));
+    }
+
     /**
-     * Create a new temporary directory
+     * Start a Hudson instance on an existing HUDSON_HOME, loading its jobs and
+     * build records
      */
-    protected File createTempDir(String prefix) {
-        File dir;
+    protected Hudson newHudson(File home) {
+        // FIXME does Hudson really need a ServletContext?
         try {
-            dir = File.createTempFile(prefix, null);
-            dir.delete();
-            dir.mkdir();
-            return dir;
+            return new Hudson(home, EasyMock.createMock(ServletContext.class));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Create a new temporary directory, deleted on tear down
+     * 
+     * @see TempDirManager
+     */
+    protected File createTempDir(String prefix) {
+        return TempDirManager.getInstance().createTempDir(prefix);
+    }
+
     /**
      * Schedules a build and waits for completion
      * 
@@ -103,23 +204,77 @@ public abstract class HudsonTestCase extends TestCase {
 
     protected Build waitForBuild(int buildToWaitFor, Project project, int timeoutInSeconds) {
     	int timeout = timeoutInSeconds * 1000;
+        long start = System.currentTimeMillis();
         try {
             long slept = 0;
+            BuildLogTailer tailer = null;
             while (project.getBuilds().size() != buildToWaitFor || project.getBuildByNumber(buildToWaitFor).isBuilding()) {
+                tailer = tailBuildLog(tailer, buildToWaitFor, project);
                 Thread.sleep(100);
                 slept += 100;
-                if (slept >= timeout) 
+                if (slept >= timeout) {
+                    printBuildLog(project.getBuildByNumber(buildToWaitFor));
                     fail("Timed out waiting " + timeoutInSeconds
                     		+ " seconds for project " + project.getName() 
                     		+ " build #" + buildToWaitFor);
+                }
             }
 
             Build build = ((Build) project.getBuildByNumber(buildToWaitFor));
-            System.out.println(build.getLog());
+            tailBuildLog(tailer, buildToWaitFor, project);
+            if (build.getResult() != Result.SUCCESS)
+                printBuildLog(build);
             return build;
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            buildWait += System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Copy what the build logged since last call to the log file of the test
+     * 
+     * @param tailer
+     *            null if the build was not seen yet
+     * @return the tailer to use for the next call
+     */
+    private BuildLogTailer tailBuildLog(BuildLogTailer tailer, int buildNumber, Project project) throws IOException {
+        if (tailer == null) {
+            Run build = project.getBuildByNumber(buildNumber);
+            if (build == null)
+                return null;
+            OutputStream out = getBuildLogStream();
+            out.write(("=== " + project.getName() + " #" + buildNumber + " ===\n").getBytes());
+            tailer = new BuildLogTailer(build.getLogFile(), out, MAX_BUILD_LOG);
+        }
+        tailer.tail();
+        return tailer;
+    }
+
+    /**
+     * Print a build log to stdout, up to {@link #MAX_BUILD_LOG} bytes
+     */
+    private void printBuildLog(Run build) throws IOException {
+        if (build == null)
+            return;
+        System.out.println(build.getParent().getName() + " #" + build.getNumber() + " " + build.getResult() + ":");
+        BuildLogTailer.copy(build.getLogFile(), System.out, MAX_BUILD_LOG);
+        System.out.println();
+    }
+
+    /**
+     * @return the file the logs of all builds waited for by this test are
+     *         streamed to
+     */
+    private OutputStream getBuildLogStream() throws IOException {
+        if (buildLogStream == null) {
+            File dir = new File("target/build-logs");
+            dir.mkdirs();
+            buildLogStream = new BufferedOutputStream(new FileOutputStream(new File(dir, getClass().getName() + "."
+                    + getName() + ".log")));
         }
+        return buildLogStream;
     }
 
     protected Build waitForNextBuild(Project project) {
@@ -135,8 +290,20 @@ public abstract class HudsonTestCase extends TestCase {
      *            command to run in shell
      * @throws Exception
      */
-    @SuppressWarnings("unchecked")
     protected void setCommand(AbstractProject project, String command) {
+        setBuilder(project, new Shell(command));
+    }
+
+    /**
+     * Clears the builders for the given project and add the specified one
+     * 
+     * @param project
+     *            project to build
+     * @param builder
+     *            the only builder of the project
+     */
+    @SuppressWarnings("unchecked")
+    protected void setBuilder(AbstractProject project, Builder builder) {
         // FIXME would be nice to be able to set the builders programmatically
         Field buildersField;
         try {
@@ -144,7 +311,7 @@ public abstract class HudsonTestCase extends TestCase {
             buildersField.setAccessible(true);
             List<Builder> builders = ((List<Builder>) buildersField.get(project));
             builders.clear();
-            builders.add(new Shell(command));
+            builders.add(builder);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
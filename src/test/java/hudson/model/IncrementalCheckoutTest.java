@@ -0,0 +1,116 @@
+package hudson.model;
+
+import hudson.FilePath;
+import hudson.scm.SubversionSCM;
+import hudson.util.WorkspaceSnapshot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of successive checkouts into the same workspace, with
+ * <tt>useUpdate</tt> on and off, for change sets of increasing size. Each
+ * checkout reports its duration and what it wrote to the workspace.
+ *
+ * The workspace size is set by the <tt>hudson.tester.workspaceFiles</tt>
+ * system property, 500 files by default.
+ */
+public class IncrementalCheckoutTest extends SubversionTestCase {
+	private static final int FILES = Integer.getInteger("hudson.tester.workspaceFiles", 500);
+	private static final int FILES_PER_DIR = 50;
+
+	FreeStyleProject project;
+	File projectDir;
+	List<File> files = new ArrayList<File>();
+	File workspace;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		project = new FreeStyleProject(hudson, "test");
+		projectDir = createSubversionProject(project);
+		for (int i = 0; i < FILES; i++) {
+			File dir = new File(projectDir, "dir" + i / FILES_PER_DIR);
+			if (!dir.exists()) {
+				dir.mkdir();
+				svnAdd(dir);
+			}
+			File file = new File(dir, "file" + i + ".txt");
+			write(file, "initial content of file " + i + "\n", false);
+			exec("svn", "add", "-q", file.getPath());
+			files.add(file);
+		}
+		svnCommit("create " + FILES + " files");
+		workspace = createTempDir("hudson-workspace");
+	}
+
+	private void write(File file, String content, boolean append) throws IOException {
+		OutputStream out = new FileOutputStream(file, append);
+		out.write(content.getBytes());
+		out.close();
+	}
+
+	/**
+	 * Modify and commit the given number of files, spread over the tree
+	 */
+	private void change(int count, int build) throws IOException {
+		int step = Math.max(1, files.size() / count);
+		for (int i = 0; i < count; i++) {
+			File file = files.get(i * step % files.size());
+			write(file, "change in build " + build + "\n", true);
+			svnCache(file);
+		}
+		svnCommit("change " + count + " files");
+	}
+
+	/**
+	 * Check out into the workspace and report
+	 */
+	private WorkspaceSnapshot.Delta checkout(String label, WorkspaceSnapshot before) throws Exception {
+		// make sure rewritten files get a new timestamp
+		Thread.sleep(1000);
+		File changeLog = new File(createTempDir("changelog"), "changelog.xml");
+		long start = System.currentTimeMillis();
+		assertTrue(project.getScm().checkout(new FreeStyleBuild(project), null, new FilePath(workspace),
+				new StreamBuildListener(System.err), changeLog));
+		long duration = System.currentTimeMillis() - start;
+		WorkspaceSnapshot after = WorkspaceSnapshot.take(workspace);
+		WorkspaceSnapshot.Delta delta = before.diff(after);
+		System.out.println(label + ": " + duration + "ms, " + delta);
+		return delta;
+	}
+
+	private void runScenario(boolean useUpdate) throws Exception {
+		project.setScm(new SubversionSCM(new String[] { getRepositoryLocation() + "/" + projectDir.getName() },
+				new String[] { "." }, useUpdate, null));
+		String mode = useUpdate ? "update" : "fresh checkout";
+		System.out.println(FILES + " files, " + mode);
+
+		WorkspaceSnapshot.Delta delta = checkout("initial " + mode, WorkspaceSnapshot.take(workspace));
+		assertEquals(FILES, delta.filesWritten);
+
+		int[] sizes = { 1, Math.max(1, FILES / 100), FILES / 2 };
+		String[] labels = { "1 file", "1%", "50%" };
+		for (int i = 0; i < sizes.length; i++) {
+			change(sizes[i], i);
+			WorkspaceSnapshot before = WorkspaceSnapshot.take(workspace);
+			delta = checkout(labels[i] + " " + mode, before);
+			if (useUpdate)
+				assertEquals(sizes[i], delta.filesWritten);
+			else
+				assertEquals(FILES, delta.filesWritten);
+		}
+	}
+
+	public void testUpdate() throws Exception {
+		runScenario(true);
+	}
+
+	public void testFreshCheckout() throws Exception {
+		runScenario(false);
+	}
+}
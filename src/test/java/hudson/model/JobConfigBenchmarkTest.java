@@ -0,0 +1,135 @@
+package hudson.model;
+
+import hudson.XmlFile;
+import hudson.tasks.BuildTrigger;
+import hudson.tasks.Mailer;
+import hudson.triggers.SCMTrigger;
+import hudson.util.BenchmarkResults;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Throughput of job configuration persistence: thousands of jobs are created
+ * and mutated with <tt>addPublisher</tt> and <tt>addTrigger</tt>, each of which
+ * writes config.xml, and the configurations are loaded back. Reported are the
+ * number of writes, the bytes written and the time spent serializing.
+ *
+ * The same work is then done in batched mode, where saves requested while the
+ * job is being provisioned are coalesced into a single write per job.
+ *
+ * The number of jobs is set by the <tt>hudson.tester.configJobs</tt> system
+ * property, 2000 by default.
+ */
+public class JobConfigBenchmarkTest extends HudsonTestCase {
+    private static final int JOBS = Integer.getInteger("hudson.tester.configJobs", 2000);
+
+    /**
+     * A free-style project counting its writes, and deferring them while
+     * batched.
+     */
+    public static class CountingProject extends FreeStyleProject {
+        static int requested;
+        static int written;
+        static long bytes;
+        static long nanos;
+
+        transient boolean batched;
+        transient boolean dirty;
+
+        public CountingProject(Hudson parent, String name) {
+            super(parent, name);
+        }
+
+        @Override
+        public synchronized void save() throws IOException {
+            requested++;
+            if (batched) {
+                dirty = true;
+                return;
+            }
+            long start = System.nanoTime();
+            super.save();
+            nanos += System.nanoTime() - start;
+            written++;
+            bytes += new File(getRootDir(), "config.xml").length();
+        }
+
+        /**
+         * Start coalescing saves
+         */
+        void startBatch() {
+            batched = true;
+        }
+
+        /**
+         * Write the pending changes, if any, at once
+         */
+        void commit() throws IOException {
+            batched = false;
+            if (dirty) {
+                dirty = false;
+                save();
+            }
+        }
+
+        static void reset() {
+            requested = written = 0;
+            bytes = nanos = 0;
+        }
+    }
+
+    private List<CountingProject> provision(String prefix, boolean batched) throws Exception {
+        CountingProject.reset();
+        List<CountingProject> projects = new ArrayList<CountingProject>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < JOBS; i++) {
+            CountingProject project = new CountingProject(hudson, prefix + i);
+            if (batched)
+                project.startBatch();
+            project.save();
+            Mailer mailer = new Mailer();
+            mailer.recipients = prefix + i + "@example.com";
+            project.addPublisher(mailer);
+            if (!projects.isEmpty())
+                projects.get(projects.size() - 1).addPublisher(new BuildTrigger(Arrays
+                        .asList(new AbstractProject[] { project }), null));
+            project.addTrigger(new SCMTrigger("* * * * *"));
+            projects.add(project);
+        }
+        for (CountingProject project : projects)
+            project.commit();
+        long duration = System.currentTimeMillis() - start;
+
+        System.out.println((batched ? "batched" : "unbatched") + ": " + JOBS + " jobs provisioned in " + duration
+                + "ms, " + CountingProject.requested + " saves requested, " + CountingProject.written
+                + " config.xml writes, " + CountingProject.bytes / 1024 + "KB written, "
+                + CountingProject.nanos / 1000000 + "ms serializing");
+        String mode = "JobConfigBenchmarkTest." + (batched ? "batched" : "unbatched");
+        BenchmarkResults.getInstance().lowerIsBetter(mode + ".provisioning.ms", duration);
+        BenchmarkResults.getInstance().lowerIsBetter(mode + ".written.KB", CountingProject.bytes / 1024);
+        assertEquals(batched ? JOBS : CountingProject.requested, CountingProject.written);
+        return projects;
+    }
+
+    private void load(List<CountingProject> projects) throws Exception {
+        long start = System.currentTimeMillis();
+        for (CountingProject project : projects) {
+            CountingProject loaded = (CountingProject) new XmlFile(Items.XSTREAM, new File(project.getRootDir(),
+                    "config.xml")).read();
+            assertEquals(project.getPublishers().size(), loaded.getPublishers().size());
+        }
+        System.out.println(projects.size() + " config.xml loaded in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public void testUnbatched() throws Exception {
+        load(provision("unbatched", false));
+    }
+
+    public void testBatched() throws Exception {
+        load(provision("batched", true));
+    }
+}
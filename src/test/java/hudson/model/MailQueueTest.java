@@ -0,0 +1,104 @@
+package hudson.model;
+
+import hudson.tasks.Mailer;
+import hudson.util.MailQueue;
+import hudson.util.QueuedMailer;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Measures build completion latency when notification mails go through a
+ * {@link MailQueue}, with a fast and a slow transport, against sending them
+ * synchronously from the build.
+ */
+public class MailQueueTest extends HudsonTestCase {
+    private static final int BUILDS = 3;
+
+    /**
+     * milliseconds the slow transport spends on each batch
+     */
+    private static final long SLOW_SMTP = 3000;
+
+    MailQueue queue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // builds follow each other as fast as they run
+        setQuietPeriod(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (queue != null)
+            queue.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Run failing builds notifying a fixed recipient.
+     *
+     * @return average build duration in milliseconds, from the start of the
+     *         build to its completion
+     */
+    private long failingBuilds(MailQueue queue) throws Exception {
+        this.queue = queue;
+        FreeStyleProject project = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, "test");
+        Mailer mailer = new QueuedMailer(queue);
+        mailer.recipients = "dev@company.com";
+        project.addPublisher(mailer);
+        setCommand(project, "nonexistentcommand");
+
+        long total = 0;
+        for (int i = 0; i < BUILDS; i++) {
+            Build build = build(project);
+            total += System.currentTimeMillis() - build.getTimestamp().getTimeInMillis();
+            assertFailure(build.getResult());
+        }
+        return total / BUILDS;
+    }
+
+    public void testFastTransport() throws Exception {
+        MailQueue.CapturingTransport transport = new MailQueue.CapturingTransport();
+        long latency = failingBuilds(new MailQueue(transport, 10));
+        System.out.println("Queued, fast transport: " + latency + "ms per build");
+        assertTrue(queue.flush(10000));
+        assertEquals(BUILDS, transport.getMessages().size());
+        assertEquals(0, queue.getFailed());
+    }
+
+    public void testSlowTransport() throws Exception {
+        MailQueue.CapturingTransport transport = new MailQueue.CapturingTransport(SLOW_SMTP);
+        long latency = failingBuilds(new MailQueue(transport, 10));
+        System.out.println("Queued, slow transport: " + latency + "ms per build");
+        assertTrue("Build waited for the transport: " + latency + "ms", latency < SLOW_SMTP);
+
+        assertTrue(queue.flush(BUILDS * SLOW_SMTP + 10000));
+        assertEquals(BUILDS, transport.getMessages().size());
+        // mails queued while the transport was busy are sent together
+        assertTrue("Expected batching, got " + queue.getBatches() + " batches", queue.getBatches() < BUILDS);
+    }
+
+    public void testSlowTransportSynchronous() throws Exception {
+        MailQueue.CapturingTransport transport = new MailQueue.CapturingTransport(SLOW_SMTP);
+        MailQueue synchronous = new MailQueue(transport, 10);
+        synchronous.setSynchronous(true);
+        long latency = failingBuilds(synchronous);
+        System.out.println("Synchronous, slow transport: " + latency + "ms per build");
+        assertTrue("Build did not wait for the transport: " + latency + "ms", latency >= SLOW_SMTP);
+        assertEquals(BUILDS, transport.getMessages().size());
+    }
+
+    public void testShutdownDropsQueued() throws Exception {
+        MailQueue.CapturingTransport transport = new MailQueue.CapturingTransport(SLOW_SMTP);
+        queue = new MailQueue(transport, 1);
+        for (int i = 0; i < BUILDS; i++)
+            queue.enqueue(new MimeMessage((Session) null));
+        queue.shutdown();
+        // nothing left to wait for
+        assertTrue(queue.flush(1000));
+        assertEquals(BUILDS, queue.getFailed());
+        assertEquals(0, transport.getMessages().size());
+    }
+}
@@ -0,0 +1,117 @@
+package hudson.model;
+
+import hudson.XmlFile;
+import hudson.tasks.BuildTrigger;
+import hudson.util.BenchmarkResults;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Startup time of Hudson against the number of jobs in HUDSON_HOME.
+ *
+ * For each size, a home is prepared with that many job configurations, every
+ * tenth job starting a chain of downstream jobs so that the dependency graph
+ * is not empty. Hudson is then started on it, and the phases of startup are
+ * timed again one by one on the new instance: parsing of the job
+ * configurations, dependency graph build and <tt>updateComputerList</tt>.
+ *
+ * The sizes are set by the <tt>hudson.tester.startupJobs</tt> system property,
+ * a comma separated list defaulting to 10,100,1000,10000.
+ */
+public class StartupBenchmarkTest extends HudsonTestCase {
+    private static final String SIZES = System.getProperty("hudson.tester.startupJobs", "10,100,1000,10000");
+
+    private static final String UPSTREAM = "template-upstream";
+    private static final String DOWNSTREAM = "template-downstream";
+
+    /**
+     * config.xml of a job triggering {@link #DOWNSTREAM}
+     */
+    private String upstreamConfig;
+
+    /**
+     * config.xml of a job without downstream
+     */
+    private String downstreamConfig;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        FreeStyleProject downstream = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, DOWNSTREAM);
+        FreeStyleProject upstream = (FreeStyleProject) hudson.createProject(FreeStyleProject.DESCRIPTOR, UPSTREAM);
+        setCommand(downstream, "echo Hello World");
+        setCommand(upstream, "echo Hello World");
+        upstream.addPublisher(new BuildTrigger(Arrays.asList(new AbstractProject[] { downstream }), null));
+        downstream.save();
+        upstream.save();
+        upstreamConfig = FileUtils.readFileToString(new File(upstream.getRootDir(), "config.xml"), "UTF-8");
+        downstreamConfig = FileUtils.readFileToString(new File(downstream.getRootDir(), "config.xml"), "UTF-8");
+    }
+
+    private static String jobName(int i) {
+        return "job" + i;
+    }
+
+    /**
+     * @return a new HUDSON_HOME with the given number of jobs
+     */
+    private File prepareHome(int jobs) throws Exception {
+        File home = createTempDir("hudson-startup");
+        for (int i = 0; i < jobs; i++) {
+            File dir = new File(home, "jobs/" + jobName(i));
+            dir.mkdirs();
+            String config = i % 10 == 9 || i == jobs - 1 ? downstreamConfig : upstreamConfig.replace(DOWNSTREAM,
+                    jobName(i + 1));
+            FileUtils.writeStringToFile(new File(dir, "config.xml"), config, "UTF-8");
+        }
+        return home;
+    }
+
+    private static long since(long start) {
+        return System.currentTimeMillis() - start;
+    }
+
+    private void measure(int jobs) throws Exception {
+        File home = prepareHome(jobs);
+        // the previous instance would keep its threads and jobs otherwise
+        shutdownHudson();
+        System.gc();
+
+        long start = System.currentTimeMillis();
+        hudson = newHudson(home);
+        long construction = since(start);
+        assertEquals(jobs, hudson.getItems().size());
+
+        start = System.currentTimeMillis();
+        for (File dir : new File(home, "jobs").listFiles())
+            new XmlFile(Items.XSTREAM, new File(dir, "config.xml")).read();
+        long parsing = since(start);
+
+        start = System.currentTimeMillis();
+        hudson.rebuildDependencyGraph();
+        long dependencyGraph = since(start);
+
+        Method updateComputerList = Hudson.class.getDeclaredMethod("updateComputerList", new Class[] {});
+        updateComputerList.setAccessible(true);
+        start = System.currentTimeMillis();
+        updateComputerList.invoke(hudson, new Object[] {});
+        long computers = since(start);
+
+        System.out.println(jobs + " jobs: startup " + construction + "ms; config parsing " + parsing
+                + "ms, dependency graph " + dependencyGraph + "ms, updateComputerList " + computers + "ms");
+        BenchmarkResults.getInstance().lowerIsBetter("StartupBenchmarkTest." + jobs + "jobs.startup.ms", construction);
+        if (jobs > 1) {
+            AbstractProject<?,?> first = (AbstractProject<?,?>) hudson.getItem(jobName(0));
+            assertEquals("Dependency graph not loaded", 1, first.getDownstreamProjects().size());
+        }
+    }
+
+    public void testStartup() throws Exception {
+        for (String size : SIZES.split(","))
+            measure(Integer.parseInt(size.trim()));
+    }
+}
@@ -0,0 +1,94 @@
+package hudson.model;
+
+import hudson.FilePath;
+import hudson.scm.SubversionSCM;
+import hudson.util.SubversionParallelCheckout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+/**
+ * A project with many Subversion modules, checked out by SubversionSCM alone,
+ * one module after the other, and after a {@link SubversionParallelCheckout}.
+ * Both workspaces must have the same files; the speed-up is reported.
+ *
+ * The number of modules is set by the <tt>hudson.tester.svnModules</tt> system
+ * property, 20 by default.
+ */
+public class SubversionParallelCheckoutTest extends SubversionTestCase {
+	private static final int MODULES = Integer.getInteger("hudson.tester.svnModules", 20);
+	private static final int FILES = 50;
+
+	String[] locations = new String[MODULES];
+	String[] localDirs = new String[MODULES];
+	FreeStyleProject project;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		for (int m = 0; m < MODULES; m++) {
+			File moduleDir = new File(svnwc, "module" + m);
+			moduleDir.mkdir();
+			for (int i = 0; i < FILES; i++)
+				new File(moduleDir, "file" + i).createNewFile();
+			exec("svn", "add", "-q", moduleDir.getPath());
+			svnCache(moduleDir);
+			locations[m] = getRepositoryLocation() + "/" + moduleDir.getName();
+			localDirs[m] = moduleDir.getName();
+		}
+		svnCommit("create modules");
+		project = new FreeStyleProject(hudson, "test");
+		project.setScm(new SubversionSCM(locations, localDirs, true, null));
+	}
+
+	/**
+	 * Run the checkout of SubversionSCM into the given workspace
+	 *
+	 * @return duration in milliseconds
+	 */
+	private long checkout(File workspace) throws Exception {
+		File changeLog = new File(createTempDir("changelog"), "changelog.xml");
+		long start = System.currentTimeMillis();
+		assertTrue(project.getScm().checkout(new FreeStyleBuild(project), null, new FilePath(workspace),
+				new StreamBuildListener(System.err), changeLog));
+		return System.currentTimeMillis() - start;
+	}
+
+	private void assertCheckedOut(File workspace) {
+		for (int m = 0; m < MODULES; m++)
+			for (int i = 0; i < FILES; i++)
+				assertTrue(new File(workspace, "module" + m + "/file" + i).exists());
+	}
+
+	public void testParallelCheckout() throws Exception {
+		File sequential = createTempDir("hudson-sequential");
+		long sequentialTime = checkout(sequential);
+		assertCheckedOut(sequential);
+
+		File parallel = createTempDir("hudson-parallel");
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		long start = System.currentTimeMillis();
+		long[] revisions = new SubversionParallelCheckout(8).checkout(locations, localDirs, parallel,
+				new PrintStream(log));
+		long parallelTime = System.currentTimeMillis() - start;
+		long updateTime = checkout(parallel);
+		assertCheckedOut(parallel);
+
+		for (long revision : revisions)
+			assertEquals(revisions[0], revision);
+		// logs are not interleaved
+		String[] lines = log.toString().split("\n");
+		int module = -1;
+		for (String line : lines) {
+			if (line.startsWith("Checking out "))
+				assertEquals(locations[++module], line.substring("Checking out ".length()));
+			else
+				assertTrue(line, line.matches(".*module" + module + "([/\\\\].*)?"));
+		}
+		assertEquals(MODULES - 1, module);
+
+		System.out.println(MODULES + " modules: sequential checkout " + sequentialTime + "ms, parallel checkout "
+				+ parallelTime + "ms followed by an update taking " + updateTime + "ms");
+	}
+}
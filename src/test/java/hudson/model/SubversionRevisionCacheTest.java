@@ -0,0 +1,150 @@
+package hudson.model;
+
+import hudson.scm.SubversionSCM;
+import hudson.util.SubversionRevisionCache;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.SVNException;
+
+/**
+ * Tests for {@link SubversionRevisionCache}: cache hits, expiry, eviction and
+ * correctness after the cached location is removed from the repository.
+ */
+public class SubversionRevisionCacheTest extends SubversionTestCase {
+	/**
+	 * cache with a clock the test controls
+	 */
+	static class ManualClockCache extends SubversionRevisionCache {
+		long now = 0;
+		int fetches = 0;
+
+		ManualClockCache(long timeToLive, int maxEntries) {
+			super(timeToLive, maxEntries);
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return now;
+		}
+
+		@Override
+		protected long fetchRevision(String url) throws SVNException {
+			fetches++;
+			return super.fetchRevision(url);
+		}
+	}
+
+	ManualClockCache cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		cache = new ManualClockCache(1000, 10);
+	}
+
+	public void testAgreesWithRepositoryLocationsExist() throws Exception {
+		String nonexistent = getRepositoryLocation() + "/nonexistent";
+		assertEquals(new SubversionSCM(new String[] { nonexistent }, new String[] { "." }, true, null)
+				.repositoryLocationsExist(), cache.exists(nonexistent));
+		assertEquals(new SubversionSCM(new String[] { getRepositoryLocation() }, new String[] { "." }, true, null)
+				.repositoryLocationsExist(), cache.exists(getRepositoryLocation()));
+		assertFalse(cache.repositoryLocationsExist(new String[] { getRepositoryLocation(), nonexistent }));
+	}
+
+	public void testCacheHits() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			assertTrue(cache.exists(getRepositoryLocation()));
+		}
+		assertEquals(1, cache.fetches);
+		assertEquals(1, cache.getMisses());
+		assertEquals(99, cache.getHits());
+	}
+
+	public void testExpiry() throws Exception {
+		cache.exists(getRepositoryLocation());
+		cache.now = 999;
+		cache.exists(getRepositoryLocation());
+		assertEquals(1, cache.fetches);
+		cache.now = 1000;
+		cache.exists(getRepositoryLocation());
+		assertEquals(2, cache.fetches);
+	}
+
+	public void testBounded() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			cache.exists(getRepositoryLocation() + "/nonexistent" + i);
+		}
+		assertEquals(10, cache.size());
+	}
+
+	public void testRevisionFollowsCommits() throws Exception {
+		FreeStyleProject project = new FreeStyleProject(hudson, "test");
+		File projectDir = createSubversionProject(project);
+		svnCommit("Add project");
+		String url = getRepositoryLocation() + "/" + projectDir.getName();
+		long created = cache.getRevision(url);
+		assertTrue(created > 0);
+
+		File hello = new File(projectDir, "hello");
+		exec("touch", hello.getPath());
+		svnAdd(hello, "hello");
+		assertEquals("Stale until invalidated", created, cache.getRevision(url));
+		cache.invalidate(getRepositoryLocation());
+		assertEquals(created + 1, cache.getRevision(url));
+	}
+
+	public void testInvalidatedDuringFetch() throws Exception {
+		ManualClockCache racing = new ManualClockCache(1000, 10) {
+			@Override
+			protected long fetchRevision(String url) throws SVNException {
+				long revision = super.fetchRevision(url);
+				// a commit notification arriving before the result is stored
+				if (fetches == 1)
+					invalidate(getRepositoryLocation());
+				return revision;
+			}
+		};
+		racing.exists(getRepositoryLocation());
+		assertEquals("Stale result stored", 0, racing.size());
+		racing.exists(getRepositoryLocation());
+		racing.exists(getRepositoryLocation());
+		assertEquals(2, racing.fetches);
+		assertEquals(1, racing.size());
+		assertEquals(0, racing.getPendingInvalidations());
+	}
+
+	public void testInvalidationsBounded() throws Exception {
+		for (int i = 0; i < 100; i++)
+			cache.invalidate(getRepositoryLocation() + "/removed" + i);
+		assertEquals(0, cache.getPendingInvalidations());
+		assertTrue(cache.exists(getRepositoryLocation()));
+		assertEquals(1, cache.size());
+	}
+
+	/**
+	 * Same sequence as {@link SubversionSCMTest#testDeleteProject()}.
+	 */
+	public void testDeletedLocation() throws Exception {
+		FreeStyleProject project = new FreeStyleProject(hudson, "test");
+		File projectDir = createSubversionProject(project);
+		svnCommit("Add project");
+		String url = getRepositoryLocation() + "/" + projectDir.getName();
+		assertTrue(cache.exists(url));
+		assertTrue(SubversionRevisionCache.getInstance().exists(url));
+
+		exec("svn", "up", projectDir.getPath());
+		exec("svn", "rm", projectDir.getPath());
+		exec("svn", "commit", "-m", "deleted", projectDir.getPath());
+		svnCommitted();
+
+		// the shared cache is invalidated by the test case hook
+		assertFalse(SubversionRevisionCache.getInstance().exists(url));
+
+		// a private cache is stale until its entry expires
+		assertTrue(cache.exists(url));
+		cache.now += 1000;
+		assertFalse(cache.exists(url));
+		assertEquals(-1, cache.getRevision(url));
+	}
+}
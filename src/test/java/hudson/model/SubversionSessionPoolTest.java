@@ -0,0 +1,172 @@
+package hudson.model;
+
+import hudson.util.SubversionPollingCoordinator;
+import hudson.util.SubversionRevisionCache;
+import hudson.util.SubversionSessionPool;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+/**
+ * Tests for {@link SubversionSessionPool}: reuse, bounds, idle eviction,
+ * sessions closed after failures, checkouts through a lease, and no session or
+ * heap leak over thousands of polls through {@link SubversionRevisionCache}
+ * and {@link SubversionPollingCoordinator}.
+ */
+public class SubversionSessionPoolTest extends SubversionTestCase {
+	private static final int OPERATIONS = 5000;
+
+	/**
+	 * pool with a clock the test controls
+	 */
+	static class ManualClockPool extends SubversionSessionPool {
+		long now = 0;
+
+		ManualClockPool(int maxIdlePerUrl, long idleTimeout) {
+			super(maxIdlePerUrl, idleTimeout);
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return now;
+		}
+	}
+
+	ManualClockPool pool;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		pool = new ManualClockPool(2, 1000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		pool.closeAll();
+		super.tearDown();
+	}
+
+	public void testReuse() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			SVNRepository repository = pool.borrow(getRepositoryLocation());
+			assertTrue(repository.getLatestRevision() >= 0);
+			pool.release(getRepositoryLocation(), repository);
+		}
+		assertEquals(1, pool.getCreated());
+		assertEquals(99, pool.getReused());
+		assertEquals(0, pool.getBorrowed());
+	}
+
+	public void testBounded() throws Exception {
+		List<SVNRepository> sessions = new ArrayList<SVNRepository>();
+		for (int i = 0; i < 5; i++)
+			sessions.add(pool.borrow(getRepositoryLocation()));
+		assertEquals(5, pool.getOpen());
+		for (SVNRepository repository : sessions)
+			pool.release(getRepositoryLocation(), repository);
+		assertEquals(2, pool.getOpen());
+		assertEquals(0, pool.getBorrowed());
+	}
+
+	public void testIdleEviction() throws Exception {
+		SVNRepository first = pool.borrow(getRepositoryLocation());
+		SVNRepository second = pool.borrow(getRepositoryLocation());
+		pool.release(getRepositoryLocation(), first);
+		pool.now = 600;
+		pool.release(getRepositoryLocation(), second);
+		pool.now = 1000;
+		assertEquals(0, pool.evictIdle());
+		pool.now = 1001;
+		assertEquals(1, pool.evictIdle());
+		assertSame(second, pool.borrow(getRepositoryLocation()));
+		pool.now = 3000;
+		pool.release(getRepositoryLocation(), second);
+		pool.now = 4001;
+		// evicted on borrow
+		assertNotSame(second, pool.borrow(getRepositoryLocation()));
+		assertEquals(1, pool.getOpen());
+	}
+
+	public void testDiscardedOnFailure() throws Exception {
+		SubversionSessionPool shared = SubversionSessionPool.getInstance();
+		String notRepository = "file://" + createTempDir("not-a-repository").getAbsolutePath();
+		int open = shared.getOpen();
+		try {
+			new SubversionRevisionCache(0, 10).exists(notRepository);
+			fail("Not a repository");
+		} catch (SVNException e) {
+			// expected
+		}
+		assertEquals(0, shared.getBorrowed());
+		assertEquals("Failed session back in the pool", open, shared.getOpen());
+	}
+
+	public void testLeaseReuse() throws Exception {
+		SubversionSessionPool.Lease lease = pool.lease();
+		SVNURL url = SVNURL.parseURIDecoded(getRepositoryLocation());
+		SVNRepository shared = lease.createRepository(url, true);
+		assertSame(shared, lease.createRepository(url, true));
+		assertNotSame(shared, lease.createRepository(url, false));
+		assertEquals(2, pool.getBorrowed());
+		lease.finish(true);
+		assertEquals(0, pool.getBorrowed());
+	}
+
+	public void testCheckoutThroughLease() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			SubversionSessionPool.Lease lease = pool.lease();
+			SVNClientManager.newInstance(SVNWCUtil.createDefaultOptions(true), lease).getUpdateClient().doCheckout(
+					SVNURL.parseURIDecoded(getRepositoryLocation()), createTempDir("checkout"), SVNRevision.HEAD,
+					SVNRevision.HEAD, true);
+			assertTrue("Checkout did not use the pool", pool.getBorrowed() > 0);
+			lease.finish(true);
+			assertEquals(0, pool.getBorrowed());
+		}
+		assertTrue("Sessions not reused", pool.getReused() > 0);
+	}
+
+	public void testNoLeak() throws Exception {
+		SubversionSessionPool shared = SubversionSessionPool.getInstance();
+		SubversionRevisionCache cache = new SubversionRevisionCache(0, 10);
+		SubversionPollingCoordinator coordinator = new SubversionPollingCoordinator();
+		coordinator.setScheduleBuilds(false);
+		FreeStyleProject project = new FreeStyleProject(hudson, "test");
+		File projectDir = createSubversionProject(project);
+		svnCommit("create project");
+		coordinator.register(project, getRepositoryLocation(), projectDir.getName());
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		// the counters add up across tests, whose idle sessions are closed
+		assertEquals("Idle sessions left by other tests", shared.getBorrowed(), shared.getOpen());
+		int created = shared.getCreated();
+		int open = shared.getOpen();
+		long heap = 0;
+		for (int i = 0; i < OPERATIONS; i++) {
+			if (i == OPERATIONS / 10) {
+				System.gc();
+				heap = memory.getHeapMemoryUsage().getUsed();
+			}
+			assertTrue(cache.exists(getRepositoryLocation()));
+			coordinator.poll();
+		}
+		System.gc();
+		long growth = memory.getHeapMemoryUsage().getUsed() - heap;
+		System.out.println(OPERATIONS * 2 + " polls: " + (shared.getCreated() - created) + " sessions opened, heap +"
+				+ growth / 1024 + "KB");
+
+		assertEquals(0, shared.getBorrowed());
+		assertTrue("Sessions not reused", shared.getCreated() - created <= 2);
+		assertTrue("Open sessions not bounded", shared.getOpen() - open <= SubversionSessionPool.DEFAULT_MAX_IDLE_PER_URL);
+		assertTrue("Heap grew by " + growth / 1024 + "KB", growth < 16 * 1024 * 1024);
+	}
+}
@@ -3,6 +3,7 @@ package hudson.model;
 import hudson.scm.SubversionSCM;
 import hudson.triggers.SCMTrigger;
 import hudson.triggers.Trigger;
+import hudson.util.SubversionRevisionCache;
 
 import java.io.File;
 import java.io.IOException;
@@ -74,6 +75,13 @@ public abstract class SubversionTestCase extends HudsonTestCase {
 		return projectDir;
 	}
 
+	/**
+	 * @return the URL of the root of the test repository
+	 */
+	protected String getRepositoryLocation() {
+		return repositoryLocation;
+	}
+
 	/**
 	 * return the file protocol and (if needed by OS) the character needed to
 	 * indicate we have an absolute path.
@@ -156,6 +164,7 @@ public abstract class SubversionTestCase extends HudsonTestCase {
 		String[] cmd = {"svn", "commit", "-m", comment, file.getPath()};
 		System.out.println(StringUtils.join(cmd, ' '));
         exec(cmd);
+        svnCommitted();
 	}
 
 	/** 
@@ -179,6 +188,15 @@ public abstract class SubversionTestCase extends HudsonTestCase {
 		System.out.println(StringUtils.join(cmd, ' '));
 		exec(cmd);
         uncommittedChanges.clear();
+        svnCommitted();
+	}
+
+	/**
+	 * Invalidates cached repository state after a commit. Tests committing
+	 * through {@link #exec(String...)} directly should call this themselves.
+	 */
+	protected void svnCommitted() {
+		SubversionRevisionCache.getInstance().invalidate(repositoryLocation);
 	}
 
 }
@@ -0,0 +1,161 @@
+package hudson.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+/**
+ * Compiled form of the <tt>artifacts</tt> setting of an
+ * {@link hudson.tasks.ArtifactArchiver}, answering whether a changed path will
+ * be archived.
+ *
+ * The setting is split and normalized once. Patterns are then stored in a trie
+ * keyed by their leading literal path segments, so that a path is only matched
+ * against the patterns whose literal prefix it shares, e.g. <tt>target/*.jar</tt>
+ * is never tried on <tt>src/Foo.java</tt>. Patterns without any wildcard are
+ * compared with equals. The remaining candidates use the same
+ * {@link SelectorUtils#matchPath(String, String)} as the mailer does, so results
+ * are unchanged.
+ *
+ * Matchers are cached per setting, see {@link #forArtifacts(String)}.
+ */
+public class ArtifactPatternMatcher {
+	private static final int MAX_CACHED = 100;
+
+	private static final Map<String, ArtifactPatternMatcher> CACHE = new LinkedHashMap<String, ArtifactPatternMatcher>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ArtifactPatternMatcher> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	private static class Node {
+		final Map<String, Node> children = new HashMap<String, Node>();
+
+		/**
+		 * patterns whose literal prefix ends at this node
+		 */
+		final List<String> patterns = new ArrayList<String>();
+
+		/**
+		 * true if a pattern without wildcards ends at this node
+		 */
+		boolean exact;
+	}
+
+	private final String artifacts;
+	private final Node root = new Node();
+	private int patternCount;
+
+	/**
+	 * @return the matcher for the given setting, compiled on first use
+	 */
+	public static ArtifactPatternMatcher forArtifacts(String artifacts) {
+		synchronized (CACHE) {
+			ArtifactPatternMatcher matcher = CACHE.get(artifacts);
+			if (matcher == null) {
+				matcher = new ArtifactPatternMatcher(artifacts);
+				CACHE.put(artifacts, matcher);
+			}
+			return matcher;
+		}
+	}
+
+	public ArtifactPatternMatcher(String artifacts) {
+		this.artifacts = artifacts;
+		for (String include : artifacts.split("[, ]+")) {
+			String pattern = include.replace(File.separatorChar, '/');
+			if (pattern.endsWith("/")) {
+				pattern += "**";
+			}
+			add(pattern);
+		}
+	}
+
+	private void add(String pattern) {
+		patternCount++;
+		Node node = root;
+		if (!pattern.startsWith("/")) {
+			for (String segment : tokenize(pattern)) {
+				if (isWildcard(segment)) {
+					node.patterns.add(pattern);
+					return;
+				}
+				Node child = node.children.get(segment);
+				if (child == null) {
+					child = new Node();
+					node.children.put(segment, child);
+				}
+				node = child;
+			}
+			node.exact = true;
+			return;
+		}
+		// absolute patterns are left to SelectorUtils
+		node.patterns.add(pattern);
+	}
+
+	/**
+	 * Split on '/' ignoring empty segments, like SelectorUtils does.
+	 */
+	private static List<String> tokenize(String path) {
+		List<String> segments = new ArrayList<String>();
+		for (String segment : path.split("/")) {
+			if (segment.length() > 0) {
+				segments.add(segment);
+			}
+		}
+		return segments;
+	}
+
+	private static boolean isWildcard(String segment) {
+		return segment.indexOf('*') != -1 || segment.indexOf('?') != -1;
+	}
+
+	/**
+	 * Check whether a path (/-separated) will be archived.
+	 */
+	public boolean matches(String path) {
+		Node node = root;
+		if (path.startsWith("/")) {
+			// only absolute and leading wildcard patterns can match
+			return matchesAny(root.patterns, path);
+		}
+		List<String> segments = tokenize(path);
+		for (int i = 0; node != null; i++) {
+			if (matchesAny(node.patterns, path)) {
+				return true;
+			}
+			if (i == segments.size()) {
+				return node.exact;
+			}
+			node = node.children.get(segments.get(i));
+		}
+		return false;
+	}
+
+	private static boolean matchesAny(List<String> patterns, String path) {
+		for (String pattern : patterns) {
+			if (SelectorUtils.matchPath(pattern, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public String getArtifacts() {
+		return artifacts;
+	}
+
+	public int getPatternCount() {
+		return patternCount;
+	}
+}
@@ -0,0 +1,102 @@
+package hudson.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+public class ArtifactPatternMatcherTest extends TestCase {
+
+	/**
+	 * The matching done by the mailer before patterns were compiled.
+	 */
+	private static boolean uncompiledMatches(String artifacts, String path) {
+		for (String include : artifacts.split("[, ]+")) {
+			String pattern = include.replace(File.separatorChar, '/');
+			if (pattern.endsWith("/")) {
+				pattern += "**";
+			}
+			if (SelectorUtils.matchPath(pattern, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void assertSameAsUncompiled(String artifacts, String path) {
+		assertEquals(artifacts + " against " + path, uncompiledMatches(artifacts, path),
+				new ArtifactPatternMatcher(artifacts).matches(path));
+	}
+
+	public void testMatches() {
+		ArtifactPatternMatcher matcher = new ArtifactPatternMatcher("target/*.jar, dist/ docs/index.html");
+		assertEquals(3, matcher.getPatternCount());
+		assertTrue(matcher.matches("target/foo.jar"));
+		assertFalse(matcher.matches("target/classes/Foo.class"));
+		assertTrue(matcher.matches("dist/foo/bar.zip"));
+		assertTrue(matcher.matches("docs/index.html"));
+		assertFalse(matcher.matches("docs/index.html/more"));
+		assertFalse(matcher.matches("docs"));
+		assertFalse(matcher.matches("src/Foo.java"));
+	}
+
+	public void testSameAsUncompiled() {
+		String[] artifacts = { "**/*.jar", "target/*.jar", "dist/", "a/b/c.txt", "a/**/c.txt", "a/?/c.txt",
+				"/abs/*.txt", "a//b/*.txt", "a/b/c.txt, a/b/", "" };
+		String[] paths = { "foo.jar", "target/foo.jar", "target/sub/foo.jar", "dist", "dist/x", "a/b/c.txt",
+				"a/x/y/c.txt", "a/b/c.txtx", "/abs/x.txt", "abs/x.txt", "a/b/x.txt", "a//b/x.txt", "" };
+		for (String a : artifacts) {
+			for (String p : paths) {
+				assertSameAsUncompiled(a, p);
+			}
+		}
+	}
+
+	public void testCached() {
+		assertSame(ArtifactPatternMatcher.forArtifacts("target/*.jar"), ArtifactPatternMatcher
+				.forArtifacts("target/*.jar"));
+		assertNotSame(ArtifactPatternMatcher.forArtifacts("target/*.jar"), ArtifactPatternMatcher
+				.forArtifacts("dist/"));
+	}
+
+	/**
+	 * Thousands of changed paths against dozens of patterns, as for culprit
+	 * mail computation on a big commit.
+	 */
+	public void testBenchmark() {
+		StringBuffer artifacts = new StringBuffer();
+		for (int i = 0; i < 40; i++) {
+			artifacts.append("module" + i + "/target/*.jar module" + i + "/dist/ ");
+		}
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			int module = i % 50;
+			paths.add("module" + module + "/" + (i % 3 == 0 ? "target/app" + i + ".jar" : "src/main/java/Foo" + i + ".java"));
+		}
+		String setting = artifacts.toString().trim();
+
+		long start = System.currentTimeMillis();
+		int uncompiledMatches = 0;
+		for (String path : paths) {
+			if (uncompiledMatches(setting, path))
+				uncompiledMatches++;
+		}
+		long uncompiled = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		int compiledMatches = 0;
+		for (String path : paths) {
+			if (ArtifactPatternMatcher.forArtifacts(setting).matches(path))
+				compiledMatches++;
+		}
+		long compiled = System.currentTimeMillis() - start;
+
+		System.out.println(paths.size() + " paths against " + ArtifactPatternMatcher.forArtifacts(setting).getPatternCount()
+				+ " patterns: uncompiled " + uncompiled + "ms, compiled " + compiled + "ms");
+		assertEquals(uncompiledMatches, compiledMatches);
+		assertTrue(compiledMatches > 0);
+	}
+}
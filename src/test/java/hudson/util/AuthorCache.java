@@ -0,0 +1,190 @@
+package hudson.util;
+
+import hudson.model.User;
+import hudson.tasks.Mailer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bounded cache of changelog author resolution: the {@link User} of an author
+ * name and the e-mail address to notify.
+ *
+ * A miss costs a {@link User#get(String)}, which creates and saves the user
+ * when it does not exist yet, and a property lookup for the address. The least
+ * recently used entries are dropped once the cache is full. Code changing the
+ * address of a user should call {@link #invalidate(String)}.
+ *
+ * FIXME Hudson has no hook on the save of a user's properties to call
+ * {@link #invalidate(String)} from, so the mailer and the changelog parsers
+ * keep calling {@link User#get(String)}; only code that controls the address
+ * changes can share an instance
+ */
+public class AuthorCache {
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	/**
+	 * Resolution of one author.
+	 */
+	public static class Author {
+		public final User user;
+
+		/**
+		 * null if the user has no address configured
+		 */
+		public final String email;
+
+		Author(User user, String email) {
+			this.user = user;
+			this.email = email;
+		}
+	}
+
+	private final Map<String, Author> entries;
+	private int hits, misses;
+
+	/**
+	 * incremented by each invalidation
+	 */
+	private long generation;
+
+	/**
+	 * number of resolutions in progress, by the generation they started in
+	 */
+	private final TreeMap<Long, Integer> resolutions = new TreeMap<Long, Integer>();
+
+	/**
+	 * generation of the last invalidation of each author invalidated while a
+	 * resolution was in progress, and of the last {@link #invalidateAll()}
+	 */
+	private final Map<String, Long> invalidations = new HashMap<String, Long>();
+	private long allInvalidated;
+
+	public AuthorCache(final int maxEntries) {
+		// access ordered, so that the eldest entry is the least recently used
+		this.entries = new LinkedHashMap<String, Author>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Author> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public Author get(String author) {
+		long started;
+		synchronized (this) {
+			Author entry = entries.get(author);
+			if (entry != null) {
+				hits++;
+				return entry;
+			}
+			misses++;
+			started = generation;
+			Integer count = resolutions.get(started);
+			resolutions.put(started, count == null ? 1 : count + 1);
+		}
+		Author entry = null;
+		try {
+			// User.get() may load or save the user, don't hold the lock
+			entry = lookup(author);
+		} finally {
+			synchronized (this) {
+				// invalidated during the resolution, the address may predate
+				// the change: let the next lookup resolve it again
+				if (entry != null && generationOf(author) <= started)
+					entries.put(author, entry);
+				resolved(started);
+			}
+		}
+		return entry;
+	}
+
+	private long generationOf(String author) {
+		Long invalidated = invalidations.get(author);
+		return invalidated == null ? allInvalidated : Math.max(allInvalidated, invalidated);
+	}
+
+	/**
+	 * Forget a resolution started in the given generation, and the
+	 * invalidations no resolution in progress predates
+	 */
+	private void resolved(long started) {
+		int count = resolutions.remove(started);
+		if (count > 1)
+			resolutions.put(started, count - 1);
+		if (resolutions.isEmpty()) {
+			invalidations.clear();
+			return;
+		}
+		long oldest = resolutions.firstKey();
+		for (Iterator<Long> it = invalidations.values().iterator(); it.hasNext();) {
+			if (it.next() <= oldest)
+				it.remove();
+		}
+	}
+
+	public User getUser(String author) {
+		return get(author).user;
+	}
+
+	/**
+	 * @return null if the author has no address configured
+	 */
+	public String getEmail(String author) {
+		return get(author).email;
+	}
+
+	/**
+	 * Resolve an author on a miss; overridable for tests.
+	 */
+	protected Author lookup(String author) {
+		return resolve(author);
+	}
+
+	/**
+	 * Resolve an author without the cache
+	 */
+	public static Author resolve(String author) {
+		User user = User.get(author);
+		Mailer.UserProperty property = user.getProperty(Mailer.UserProperty.class);
+		return new Author(user, property == null ? null : property.getAddress());
+	}
+
+	public synchronized void invalidate(String author) {
+		entries.remove(author);
+		++generation;
+		if (!resolutions.isEmpty())
+			invalidations.put(author, generation);
+	}
+
+	public synchronized void invalidateAll() {
+		entries.clear();
+		invalidations.clear();
+		allInvalidated = ++generation;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of invalidations kept for the resolutions in
+	 *         progress
+	 */
+	public synchronized int getPendingInvalidations() {
+		return invalidations.size();
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+}
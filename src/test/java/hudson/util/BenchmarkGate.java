@@ -0,0 +1,230 @@
+package hudson.util;
+
+import hudson.util.BenchmarkResults.Better;
+import hudson.util.BenchmarkResults.Metric;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides whether the benchmarks of a run regressed, comparing their
+ * {@link BenchmarkResults} with a baseline file.
+ *
+ * The baseline has the format of the results, with an optional fourth column
+ * giving the tolerance of the metric, in percent; the default tolerance
+ * applies otherwise. A metric worse than its baseline by more than its
+ * tolerance is a regression. A baseline value of <tt>NaN</tt> stands for a
+ * metric whose value was not recorded yet. The run fails on regressions, on
+ * baseline metrics it did not measure or with no recorded value, and when the
+ * baseline does not exist; new metrics are only reported. The comparison is
+ * written as a tab-separated diff, one line per metric, for other tools to
+ * read.
+ *
+ * Run with <tt>main()</tt>, see the <tt>benchmarks</tt> profile of the pom;
+ * system properties:
+ * <ul>
+ * <li><tt>hudson.tester.benchmarkBaseline</tt>, the baseline file,
+ * <tt>benchmark-baseline.tsv</tt> by default</li>
+ * <li><tt>hudson.tester.benchmarkResults</tt>, see {@link BenchmarkResults}</li>
+ * <li><tt>hudson.tester.benchmarkDiff</tt>, the diff written,
+ * <tt>target/benchmark-diff.tsv</tt> by default</li>
+ * <li><tt>hudson.tester.benchmarkTolerance</tt>, the default tolerance in
+ * percent, 10 by default</li>
+ * <li><tt>hudson.tester.updateBaseline</tt>, to replace the baseline values
+ * with the results instead of comparing, keeping the tolerances and the
+ * metrics not measured; this creates the baseline if it does not exist</li>
+ * </ul>
+ */
+public class BenchmarkGate {
+	/**
+	 * Outcome of the comparison of one metric.
+	 */
+	public enum Status {
+		OK, IMPROVED, REGRESSION, NEW, MISSING, UNRECORDED
+	}
+
+	/**
+	 * Comparison of one metric.
+	 */
+	public static class Difference {
+		public final String metric;
+		public final Metric baseline;
+		public final Metric current;
+
+		/**
+		 * relative change, positive when worse; 0 if either value is missing
+		 */
+		public final double change;
+		public final double tolerance;
+		public final Status status;
+
+		Difference(String metric, Metric baseline, Metric current, double change, double tolerance, Status status) {
+			this.metric = metric;
+			this.baseline = baseline;
+			this.current = current;
+			this.change = change;
+			this.tolerance = tolerance;
+			this.status = status;
+		}
+	}
+
+	private final double defaultTolerance;
+
+	/**
+	 * @param defaultTolerance
+	 *            relative tolerance of the metrics without one in the
+	 *            baseline, e.g. 0.1 for 10%
+	 */
+	public BenchmarkGate(double defaultTolerance) {
+		this.defaultTolerance = defaultTolerance;
+	}
+
+	/**
+	 * @return the tolerances of the baseline metrics which have one, as
+	 *         ratios
+	 */
+	public static Map<String, Double> loadTolerances(File baseline) throws IOException {
+		Map<String, Double> tolerances = new HashMap<String, Double>();
+		if (!baseline.exists())
+			return tolerances;
+		BufferedReader in = new BufferedReader(new FileReader(baseline));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length >= 4 && !line.startsWith("#"))
+					tolerances.put(fields[0], Double.parseDouble(fields[3]) / 100);
+			}
+		} finally {
+			in.close();
+		}
+		return tolerances;
+	}
+
+	/**
+	 * @return one difference per metric, baseline metrics first
+	 */
+	public List<Difference> compare(Map<String, Metric> baseline, Map<String, Double> tolerances,
+			Map<String, Metric> current) {
+		List<Difference> differences = new ArrayList<Difference>();
+		for (Map.Entry<String, Metric> e : baseline.entrySet()) {
+			String name = e.getKey();
+			Metric before = e.getValue();
+			Metric after = current.get(name);
+			Double tolerance = tolerances.get(name);
+			if (tolerance == null)
+				tolerance = defaultTolerance;
+			if (after == null) {
+				differences.add(new Difference(name, before, null, 0, tolerance, Status.MISSING));
+				continue;
+			}
+			if (Double.isNaN(before.value)) {
+				differences.add(new Difference(name, before, after, 0, tolerance, Status.UNRECORDED));
+				continue;
+			}
+			double change = before.value == 0 ? 0 : (after.value - before.value) / Math.abs(before.value);
+			if (before.better == Better.HIGHER)
+				change = -change;
+			Status status = change > tolerance ? Status.REGRESSION : change < -tolerance ? Status.IMPROVED
+					: Status.OK;
+			differences.add(new Difference(name, before, after, change, tolerance, status));
+		}
+		for (Map.Entry<String, Metric> e : current.entrySet()) {
+			if (!baseline.containsKey(e.getKey()))
+				differences.add(new Difference(e.getKey(), null, e.getValue(), 0, defaultTolerance, Status.NEW));
+		}
+		return differences;
+	}
+
+	/**
+	 * @return the number of regressions, missing metrics and metrics with no
+	 *         baseline value
+	 */
+	public static int countFailures(List<Difference> differences) {
+		int failures = 0;
+		for (Difference d : differences) {
+			if (d.status == Status.REGRESSION || d.status == Status.MISSING || d.status == Status.UNRECORDED)
+				failures++;
+		}
+		return failures;
+	}
+
+	/**
+	 * Write the differences as tab-separated values: metric, baseline value,
+	 * current value, change and tolerance in percent, status
+	 */
+	public static void writeDiff(List<Difference> differences, File file) throws IOException {
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		Writer out = new FileWriter(file);
+		try {
+			out.write("#metric\tbaseline\tcurrent\tchange%\ttolerance%\tstatus\n");
+			for (Difference d : differences) {
+				out.write(d.metric + "\t" + (d.baseline == null ? "" : String.valueOf(d.baseline.value)) + "\t"
+						+ (d.current == null ? "" : String.valueOf(d.current.value)) + "\t"
+						+ Math.round(d.change * 1000) / 10.0 + "\t" + Math.round(d.tolerance * 1000) / 10.0 + "\t"
+						+ d.status + "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the current values as the new baseline, keeping the tolerances
+	 */
+	public static void writeBaseline(Map<String, Metric> current, Map<String, Double> tolerances, File file)
+			throws IOException {
+		Writer out = new FileWriter(file);
+		try {
+			out.write("#metric\tvalue\tbetter\ttolerance%\n");
+			for (Map.Entry<String, Metric> e : current.entrySet()) {
+				Double tolerance = tolerances.get(e.getKey());
+				out.write(e.getKey() + "\t" + e.getValue().value + "\t" + e.getValue().better
+						+ (tolerance == null ? "" : "\t" + tolerance * 100) + "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		File baselineFile = new File(System.getProperty("hudson.tester.benchmarkBaseline", "benchmark-baseline.tsv"));
+		File diffFile = new File(System.getProperty("hudson.tester.benchmarkDiff", "target/benchmark-diff.tsv"));
+		Map<String, Metric> current = BenchmarkResults.load(BenchmarkResults.getInstance().getFile());
+		Map<String, Double> tolerances = loadTolerances(baselineFile);
+
+		if (Boolean.getBoolean("hudson.tester.updateBaseline")) {
+			// metrics this run did not measure keep their baseline
+			Map<String, Metric> updated = BenchmarkResults.load(baselineFile);
+			updated.putAll(current);
+			writeBaseline(updated, tolerances, baselineFile);
+			System.out.println(current.size() + " of " + updated.size() + " metrics updated in " + baselineFile);
+			return;
+		}
+
+		if (!baselineFile.exists())
+			throw new IllegalStateException("No benchmark baseline " + baselineFile
+					+ ", record one with hudson.tester.updateBaseline=true");
+		BenchmarkGate gate = new BenchmarkGate(Double.parseDouble(System.getProperty(
+				"hudson.tester.benchmarkTolerance", "10")) / 100);
+		List<Difference> differences = gate.compare(BenchmarkResults.load(baselineFile), tolerances, current);
+		writeDiff(differences, diffFile);
+		for (Difference d : differences) {
+			if (d.status != Status.OK)
+				System.out.println(d.status + " " + d.metric + ": " + (d.baseline == null ? "-" : d.baseline.value)
+						+ " -> " + (d.current == null ? "-" : d.current.value));
+		}
+		int failures = countFailures(differences);
+		if (failures > 0)
+			throw new IllegalStateException(failures + " benchmark failures, see " + diffFile);
+		System.out.println("No benchmark regression against " + baselineFile);
+	}
+}
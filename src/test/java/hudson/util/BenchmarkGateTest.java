@@ -0,0 +1,105 @@
+package hudson.util;
+
+import hudson.util.BenchmarkGate.Difference;
+import hudson.util.BenchmarkGate.Status;
+import hudson.util.BenchmarkResults.Better;
+import hudson.util.BenchmarkResults.Metric;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class BenchmarkGateTest extends TestCase {
+
+	private Map<String, Metric> baseline = new LinkedHashMap<String, Metric>();
+	private Map<String, Metric> current = new LinkedHashMap<String, Metric>();
+	private Map<String, Double> tolerances = new HashMap<String, Double>();
+	private BenchmarkGate gate = new BenchmarkGate(0.1);
+
+	private Difference only(String metric) {
+		for (Difference d : gate.compare(baseline, tolerances, current)) {
+			if (d.metric.equals(metric))
+				return d;
+		}
+		fail(metric + " not compared");
+		return null;
+	}
+
+	public void testThroughput() {
+		baseline.put("throughput", new Metric(100, Better.HIGHER));
+		current.put("throughput", new Metric(91, Better.HIGHER));
+		assertEquals(Status.OK, only("throughput").status);
+		current.put("throughput", new Metric(89, Better.HIGHER));
+		assertEquals(Status.REGRESSION, only("throughput").status);
+		current.put("throughput", new Metric(120, Better.HIGHER));
+		assertEquals(Status.IMPROVED, only("throughput").status);
+	}
+
+	public void testLatency() {
+		baseline.put("p99", new Metric(100, Better.LOWER));
+		current.put("p99", new Metric(111, Better.LOWER));
+		assertEquals(Status.REGRESSION, only("p99").status);
+		assertEquals(0.11, only("p99").change, 0.0001);
+		current.put("p99", new Metric(50, Better.LOWER));
+		assertEquals(Status.IMPROVED, only("p99").status);
+	}
+
+	public void testToleranceOfMetric() {
+		baseline.put("p99", new Metric(100, Better.LOWER));
+		current.put("p99", new Metric(140, Better.LOWER));
+		tolerances.put("p99", 0.5);
+		assertEquals(Status.OK, only("p99").status);
+	}
+
+	public void testNewAndMissing() {
+		baseline.put("old", new Metric(1, Better.LOWER));
+		current.put("new", new Metric(1, Better.LOWER));
+		List<Difference> differences = gate.compare(baseline, tolerances, current);
+		assertEquals(2, differences.size());
+		assertEquals(Status.MISSING, differences.get(0).status);
+		assertEquals(Status.NEW, differences.get(1).status);
+		assertEquals(1, BenchmarkGate.countFailures(differences));
+	}
+
+	public void testUnrecorded() {
+		baseline.put("p99", new Metric(Double.NaN, Better.LOWER));
+		current.put("p99", new Metric(20, Better.LOWER));
+		assertEquals(Status.UNRECORDED, only("p99").status);
+		assertEquals(1, BenchmarkGate.countFailures(gate.compare(baseline, tolerances, current)));
+	}
+
+	public void testFiles() throws Exception {
+		File dir = File.createTempFile("benchmark", null);
+		dir.delete();
+		dir.mkdir();
+		try {
+			BenchmarkResults results = new BenchmarkResults(new File(dir, "results.tsv"));
+			results.higherIsBetter("throughput", 100);
+			results.lowerIsBetter("p99", 20);
+			File baselineFile = new File(dir, "baseline.tsv");
+			tolerances.put("p99", 0.5);
+			BenchmarkGate.writeBaseline(BenchmarkResults.load(results.getFile()), tolerances, baselineFile);
+
+			// truncated on first record only
+			results = new BenchmarkResults(results.getFile());
+			results.higherIsBetter("throughput", 80);
+			results.lowerIsBetter("p99", 25);
+			current = BenchmarkResults.load(results.getFile());
+			assertEquals(2, current.size());
+
+			List<Difference> differences = gate.compare(BenchmarkResults.load(baselineFile), BenchmarkGate
+					.loadTolerances(baselineFile), current);
+			assertEquals(Status.REGRESSION, differences.get(0).status);
+			assertEquals(Status.OK, differences.get(1).status);
+			File diff = new File(dir, "diff.tsv");
+			BenchmarkGate.writeDiff(differences, diff);
+			assertTrue(diff.length() > 0);
+		} finally {
+			TempDirManager.delete(dir);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package hudson.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Metrics measured by the benchmarks of the tester, for {@link BenchmarkGate}
+ * to compare with a baseline.
+ *
+ * Each line of the file holds the metric name, its value and whether higher
+ * or lower values are better, separated by tabs. The file of the current run
+ * is <tt>target/benchmark-results.tsv</tt>, set by the
+ * <tt>hudson.tester.benchmarkResults</tt> system property; it is truncated on
+ * the first metric recorded by the JVM.
+ */
+public class BenchmarkResults {
+	private static final Logger LOGGER = Logger.getLogger(BenchmarkResults.class.getName());
+
+	private static BenchmarkResults instance;
+
+	/**
+	 * Which way a metric improves.
+	 */
+	public enum Better {
+		HIGHER, LOWER
+	}
+
+	/**
+	 * Value of one metric.
+	 */
+	public static class Metric {
+		public final double value;
+		public final Better better;
+
+		public Metric(double value, Better better) {
+			this.value = value;
+			this.better = better;
+		}
+	}
+
+	private final File file;
+	private boolean truncated;
+
+	public BenchmarkResults(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the results of this run
+	 */
+	public static synchronized BenchmarkResults getInstance() {
+		if (instance == null)
+			instance = new BenchmarkResults(new File(System.getProperty("hudson.tester.benchmarkResults",
+					"target/benchmark-results.tsv")));
+		return instance;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Record a metric; failures to write are logged, not thrown, so that they
+	 * never fail the benchmark
+	 *
+	 * @param name
+	 *            unique across benchmarks, e.g. the test class and what is
+	 *            measured, with its unit
+	 */
+	public synchronized void record(String name, double value, Better better) {
+		try {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+			Writer out = new FileWriter(file, truncated);
+			truncated = true;
+			try {
+				out.write(name + "\t" + value + "\t" + better + "\n");
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to record " + name + " in " + file, e);
+		}
+	}
+
+	public void higherIsBetter(String name, double value) {
+		record(name, value, Better.HIGHER);
+	}
+
+	public void lowerIsBetter(String name, double value) {
+		record(name, value, Better.LOWER);
+	}
+
+	/**
+	 * @return the metrics of a results file, by name, the last value winning;
+	 *         empty if the file does not exist
+	 */
+	public static Map<String, Metric> load(File file) throws IOException {
+		Map<String, Metric> metrics = new LinkedHashMap<String, Metric>();
+		if (!file.exists())
+			return metrics;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length < 3 || line.startsWith("#"))
+					continue;
+				metrics.put(fields[0], new Metric(Double.parseDouble(fields[1]), Better.valueOf(fields[2])));
+			}
+		} finally {
+			in.close();
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,74 @@
+package hudson.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Gives a job a long build history without running the builds.
+ *
+ * The record of a build that really ran is used as a template: its directory
+ * is copied once per synthetic build, under a new build ID (the timestamp
+ * based directory name), with the build number in <tt>build.xml</tt> changed.
+ * The job <tt>nextBuildNumber</tt> file is updated, so that a Hudson instance
+ * started on the home loads all the records.
+ */
+public class BuildHistoryFixture {
+	/**
+	 * same format as the build IDs of Hudson
+	 */
+	private static final String ID_FORMAT = "yyyy-MM-dd_HH-mm-ss";
+
+	private final File jobDir;
+	private final File template;
+
+	/**
+	 * @param jobDir the job root directory, with a single build record
+	 */
+	public BuildHistoryFixture(File jobDir) throws IOException {
+		this.jobDir = jobDir;
+		File[] builds = new File(jobDir, "builds").listFiles();
+		if (builds == null || builds.length != 1)
+			throw new IOException("Expected a single build record in " + jobDir);
+		this.template = builds[0];
+	}
+
+	/**
+	 * Add build records numbered from 2 to <tt>count</tt>, one second apart,
+	 * after the template build.
+	 */
+	public void synthesize(int count) throws IOException {
+		String buildXml = FileUtils.readFileToString(new File(template, "build.xml"), "UTF-8");
+		SimpleDateFormat format = new SimpleDateFormat(ID_FORMAT);
+		long first;
+		try {
+			first = format.parse(template.getName()).getTime();
+		} catch (ParseException e) {
+			throw new IOException("Unexpected build ID " + template.getName());
+		}
+		File builds = template.getParentFile();
+		for (int number = 2; number <= count; number++) {
+			File dir = new File(builds, format.format(new Date(first + (number - 1) * 1000L)));
+			dir.mkdirs();
+			File[] files = template.listFiles();
+			for (File f : files) {
+				if (f.isFile() && !f.getName().equals("build.xml"))
+					FileUtils.copyFileToDirectory(f, dir);
+			}
+			FileUtils.writeStringToFile(new File(dir, "build.xml"), buildXml.replaceFirst("<number>\\d+</number>",
+					"<number>" + number + "</number>"), "UTF-8");
+		}
+		FileUtils.writeStringToFile(new File(jobDir, "nextBuildNumber"), String.valueOf(count + 1), "UTF-8");
+	}
+
+	/**
+	 * @return disk usage of the job build records
+	 */
+	public TempDirManager.Usage usage() {
+		return TempDirManager.usage(new File(jobDir, "builds"));
+	}
+}
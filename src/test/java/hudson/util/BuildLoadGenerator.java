@@ -0,0 +1,144 @@
+package hudson.util;
+
+import hudson.model.AbstractProject;
+import hudson.model.Build;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Hudson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules one build of each of many projects and measures how fast the
+ * controller runs them: the latency from {@link AbstractProject#scheduleBuild()}
+ * to the build reaching its builder, and the builds per second.
+ *
+ * The projects must build with a {@link NoOpBuilder} notifying this generator,
+ * so that what is measured is the queue and executors, not the build work.
+ */
+public class BuildLoadGenerator implements NoOpBuilder.Listener {
+    /**
+     * Measures of one {@link BuildLoadGenerator#run(List, long)}.
+     */
+    public static class Result {
+        public final int builds;
+        public final long millis;
+
+        /**
+         * scheduling latencies in milliseconds, sorted
+         */
+        private final long[] latencies;
+
+        Result(int builds, long millis, long[] latencies) {
+            this.builds = builds;
+            this.millis = millis;
+            this.latencies = latencies;
+        }
+
+        public double getBuildsPerSecond() {
+            return millis == 0 ? builds : builds * 1000.0 / millis;
+        }
+
+        /**
+         * @param percent
+         *            e.g. 99 for the 99th percentile
+         * @return the scheduling latency in milliseconds, 0 if no build ran
+         */
+        public long getLatency(double percent) {
+            if (latencies.length == 0)
+                return 0;
+            int i = (int) Math.ceil(percent / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, i))];
+        }
+    }
+
+    /**
+     * nanoTime of the scheduling of the pending builds, by project name
+     */
+    private final Map<String, Long> scheduled = new ConcurrentHashMap<String, Long>();
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+    private volatile CountDownLatch performed = new CountDownLatch(0);
+
+    public void performed(Build<?, ?> build) {
+        Long start = scheduled.remove(build.getParent().getName());
+        if (start == null)
+            return;
+        latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        performed.countDown();
+    }
+
+    /**
+     * Schedule a build of each project, wait for all of them to be done and
+     * for the executors to be idle again
+     *
+     * @return null on timeout
+     */
+    public Result run(List<? extends AbstractProject<?, ?>> projects, long timeoutMillis)
+            throws InterruptedException {
+        scheduled.clear();
+        latencies.clear();
+        performed = new CountDownLatch(projects.size());
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        long start = System.nanoTime();
+        int builds = 0;
+        for (AbstractProject<?, ?> project : projects) {
+            scheduled.put(project.getName(), System.nanoTime());
+            if (project.scheduleBuild()) {
+                builds++;
+            } else {
+                // already in the queue, not our build
+                scheduled.remove(project.getName());
+                performed.countDown();
+            }
+        }
+        if (!performed.await(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS))
+            return null;
+        if (!awaitIdle(deadline))
+            return null;
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        long[] sorted = new long[latencies.size()];
+        synchronized (latencies) {
+            for (int i = 0; i < sorted.length; i++)
+                sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        return new Result(builds, millis, sorted);
+    }
+
+    /**
+     * Wait for the queue to be empty and all executors to be done with their
+     * build
+     *
+     * @return false if the deadline passed first
+     */
+    private static boolean awaitIdle(long deadline) throws InterruptedException {
+        Hudson hudson = Hudson.getInstance();
+        while (!isIdle(hudson)) {
+            if (System.currentTimeMillis() >= deadline)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static boolean isIdle(Hudson hudson) {
+        if (hudson.getQueue().getItems().length > 0)
+            return false;
+        for (Computer computer : hudson.getComputers()) {
+            for (Executor executor : computer.getExecutors()) {
+                if (!executor.isIdle())
+                    return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package hudson.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Copies a growing build log to another stream, a chunk at a time, without
+ * ever loading the whole log in memory.
+ *
+ * Each call to {@link #tail()} copies what was appended since the previous
+ * call. At most <tt>cap</tt> bytes are copied, after which a truncation marker
+ * is written once and the rest of the log is skipped.
+ */
+public class BuildLogTailer {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final File log;
+	private final OutputStream out;
+	private final long cap;
+	private long offset;
+	private boolean truncated;
+
+	public BuildLogTailer(File log, OutputStream out, long cap) {
+		this.log = log;
+		this.out = out;
+		this.cap = cap;
+	}
+
+	/**
+	 * Copy whatever was appended to the log since the last call.
+	 *
+	 * @return the number of bytes copied
+	 */
+	public long tail() throws IOException {
+		long length = log.length();
+		if (length <= offset || truncated)
+			return 0;
+		long end = Math.min(length, cap);
+		long copied = 0;
+		if (end > offset) {
+			RandomAccessFile in = new RandomAccessFile(log, "r");
+			try {
+				in.seek(offset);
+				byte[] buf = new byte[BUFFER_SIZE];
+				while (offset < end) {
+					int n = in.read(buf, 0, (int) Math.min(buf.length, end - offset));
+					if (n == -1)
+						break;
+					out.write(buf, 0, n);
+					offset += n;
+					copied += n;
+				}
+			} finally {
+				in.close();
+			}
+		}
+		if (length > cap && offset >= cap) {
+			truncated = true;
+			out.write(("\n[log truncated after " + cap + " bytes, see " + log + "]\n").getBytes());
+		}
+		out.flush();
+		return copied;
+	}
+
+	/**
+	 * @return true once the cap was reached
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Copy a complete log, up to the cap.
+	 */
+	public static void copy(File log, OutputStream out, long cap) throws IOException {
+		new BuildLogTailer(log, out, cap).tail();
+	}
+}
@@ -0,0 +1,71 @@
+package hudson.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class BuildLogTailerTest extends TestCase {
+
+	private File log;
+	private ByteArrayOutputStream out;
+
+	@Override
+	protected void setUp() throws Exception {
+		log = File.createTempFile("log", null);
+		out = new ByteArrayOutputStream();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		log.delete();
+	}
+
+	private void append(String s) throws IOException {
+		FileOutputStream o = new FileOutputStream(log, true);
+		o.write(s.getBytes());
+		o.close();
+	}
+
+	public void testIncremental() throws IOException {
+		BuildLogTailer tailer = new BuildLogTailer(log, out, 1000);
+		assertEquals(0, tailer.tail());
+		append("Started\n");
+		assertEquals(8, tailer.tail());
+		assertEquals(0, tailer.tail());
+		append("Hello World\nFinished: SUCCESS\n");
+		tailer.tail();
+		assertEquals("Started\nHello World\nFinished: SUCCESS\n", out.toString());
+		assertFalse(tailer.isTruncated());
+	}
+
+	public void testCap() throws IOException {
+		BuildLogTailer tailer = new BuildLogTailer(log, out, 10);
+		append("0123456");
+		tailer.tail();
+		append("789abcdef");
+		tailer.tail();
+		assertTrue(tailer.isTruncated());
+		append("more");
+		assertEquals(0, tailer.tail());
+		String s = out.toString();
+		assertTrue(s, s.startsWith("0123456789\n[log truncated after 10 bytes"));
+		assertEquals("marker written once", s.indexOf("truncated"), s.lastIndexOf("truncated"));
+	}
+
+	public void testLargeLog() throws IOException {
+		StringBuffer line = new StringBuffer();
+		for (int i = 0; i < 100; i++)
+			line.append('x');
+		line.append('\n');
+		FileOutputStream o = new FileOutputStream(log);
+		for (int i = 0; i < 10000; i++)
+			o.write(line.toString().getBytes());
+		o.close();
+
+		BuildLogTailer.copy(log, out, Long.MAX_VALUE);
+		assertEquals(log.length(), out.size());
+	}
+}
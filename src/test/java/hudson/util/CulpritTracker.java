@@ -0,0 +1,90 @@
+package hudson.util;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the culprits of each project up to date as builds complete.
+ *
+ * The mailer finds who broke a build by walking back over the changelogs of
+ * all previous failing builds, so every build of a long broken job costs more
+ * than the previous one. Here each completed build is {@link #record(AbstractBuild)}ed
+ * once: its authors are added to the set of the current failure streak, and the
+ * set is dropped when the project is back to normal. The result is the same as
+ * {@link #walkBack(AbstractBuild)}, at constant cost per build.
+ */
+public class CulpritTracker {
+	/**
+	 * authors of the current failure streak, per project name; absent when
+	 * the last recorded build was successful
+	 */
+	private final Map<String, Set<User>> streaks = new HashMap<String, Set<User>>();
+
+	/**
+	 * Record a completed build.
+	 *
+	 * @return the culprits to notify for this build: the authors of this build
+	 *         and of all the failing builds right before it
+	 */
+	public synchronized Set<User> record(AbstractBuild<?,?> build) {
+		String project = build.getProject().getName();
+		Set<User> culprits = streaks.remove(project);
+		if (culprits == null) {
+			culprits = new LinkedHashSet<User>();
+		}
+		addAuthors(build, culprits);
+		if (build.getResult().isWorseThan(Result.SUCCESS)) {
+			streaks.put(project, culprits);
+		}
+		// the streak keeps growing with the next failures
+		return Collections.unmodifiableSet(new LinkedHashSet<User>(culprits));
+	}
+
+	/**
+	 * @return the authors of the current failure streak of a project, empty if
+	 *         the last recorded build was successful
+	 */
+	public synchronized Set<User> getCulprits(String projectName) {
+		Set<User> culprits = streaks.get(projectName);
+		if (culprits == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new LinkedHashSet<User>(culprits));
+	}
+
+	/**
+	 * Forget a project, e.g. when it is deleted or renamed.
+	 */
+	public synchronized void forget(String projectName) {
+		streaks.remove(projectName);
+	}
+
+	/**
+	 * Compute the culprits the way the mailer does, by walking back over the
+	 * previous failing builds.
+	 */
+	public static Set<User> walkBack(AbstractBuild<?,?> build) {
+		Set<User> culprits = new LinkedHashSet<User>();
+		addAuthors(build, culprits);
+		for (AbstractBuild<?,?> b = build.getPreviousBuild(); b != null && b.getResult().isWorseThan(Result.SUCCESS); b = b
+				.getPreviousBuild()) {
+			addAuthors(b, culprits);
+		}
+		return culprits;
+	}
+
+	private static void addAuthors(AbstractBuild<?,?> build, Set<User> culprits) {
+		ChangeLogSet changes = build.getChangeSet();
+		for (Object item : changes.getItems()) {
+			culprits.add(((ChangeLogSet.Entry) item).getAuthor());
+		}
+	}
+}
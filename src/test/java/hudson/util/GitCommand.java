@@ -0,0 +1,55 @@
+package hudson.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the <tt>git</tt> command line, for the tester facilities working next
+ * to {@link hudson.plugins.git.GitSCM}.
+ */
+public class GitCommand {
+	private GitCommand() {
+	}
+
+	/**
+	 * Run git with the given arguments
+	 *
+	 * @param dir
+	 *            working directory, null for the current one
+	 * @return standard output and standard error
+	 * @throws IOException
+	 *             if git exits with a non zero status
+	 */
+	public static String run(File dir, String... args) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add("git");
+		command.addAll(Arrays.asList(args));
+		Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+		process.getOutputStream().close();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputStream in = process.getInputStream();
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1)
+				out.write(buf, 0, n);
+		} finally {
+			in.close();
+		}
+		int status;
+		try {
+			status = process.waitFor();
+		} catch (InterruptedException e) {
+			process.destroy();
+			throw new IOException("Interrupted running " + command);
+		}
+		if (status != 0)
+			throw new IOException(command + " in " + dir + " exited with " + status + ": " + out);
+		return out.toString();
+	}
+}
@@ -0,0 +1,131 @@
+package hudson.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.spearce.jgit.transport.RefSpec;
+import org.spearce.jgit.transport.RemoteConfig;
+import org.spearce.jgit.transport.URIish;
+
+/**
+ * Fetches all the remotes of a workspace repository at once, with a bounded
+ * number of concurrent fetches, instead of one after the other.
+ *
+ * Remotes are added to the repository as configured for GitSCM, so that its
+ * own fetches afterwards find nothing left to transfer. The output of each
+ * fetch is logged in the order of the remotes, not interleaved.
+ *
+ * Concurrent fetches in one repository must not step on each other: each
+ * remote has to fetch into refs of its own, the fetches do not write
+ * <tt>FETCH_HEAD</tt> and do not start <tt>gc --auto</tt>. The URIs of a
+ * remote are fetched one after the other, as they update the same refs.
+ *
+ * FIXME GitSCM runs its fetches one remote at a time during checkout; the
+ * parallel fetch only helps workspaces fetched ahead of the build
+ */
+public class GitParallelFetcher {
+	private final int maxConcurrent;
+
+	/**
+	 * @param maxConcurrent
+	 *            maximum number of fetches running at once
+	 */
+	public GitParallelFetcher(int maxConcurrent) {
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	/**
+	 * Initialize the repository if needed, and add the missing remotes
+	 */
+	public void configure(File repository, List<RemoteConfig> remotes) throws IOException {
+		Map<String, String> destinations = new HashMap<String, String>();
+		for (RemoteConfig remote : remotes) {
+			for (RefSpec spec : remote.getFetchRefSpecs()) {
+				String other = destinations.put(spec.getDestination(), remote.getName());
+				if (other != null && !other.equals(remote.getName()))
+					throw new IOException("Remotes " + other + " and " + remote.getName() + " both fetch into "
+							+ spec.getDestination());
+			}
+		}
+		if (!new File(repository, ".git").exists()) {
+			repository.mkdirs();
+			GitCommand.run(repository, "init");
+		}
+		List<String> existing = Arrays.asList(GitCommand.run(repository, "remote").split("\n"));
+		for (RemoteConfig remote : remotes) {
+			if (existing.contains(remote.getName()))
+				continue;
+			URIish uri = remote.getURIs().get(0);
+			GitCommand.run(repository, "config", "remote." + remote.getName() + ".url", uri.toString());
+			for (RefSpec spec : remote.getFetchRefSpecs())
+				GitCommand.run(repository, "config", "--add", "remote." + remote.getName() + ".fetch", spec
+						.toString());
+		}
+	}
+
+	/**
+	 * Fetch the given remotes, configuring them first
+	 *
+	 * @param log
+	 *            receives the output of each fetch, in the order of the
+	 *            remotes
+	 */
+	public void fetch(final File repository, List<RemoteConfig> remotes, PrintStream log) throws IOException,
+			InterruptedException {
+		configure(repository, remotes);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(maxConcurrent, remotes
+				.size())));
+		try {
+			List<Future<String>> outputs = new ArrayList<Future<String>>();
+			for (final RemoteConfig remote : remotes) {
+				outputs.add(executor.submit(new Callable<String>() {
+					public String call() throws IOException {
+						StringBuilder output = new StringBuilder();
+						for (URIish uri : remote.getURIs())
+							output.append(fetch(repository, uri, remote.getFetchRefSpecs()));
+						return output.toString();
+					}
+				}));
+			}
+			IOException failure = null;
+			for (int i = 0; i < remotes.size(); i++) {
+				log.println("Fetching " + remotes.get(i).getName());
+				try {
+					log.print(outputs.get(i).get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					log.println(cause.getMessage());
+					if (failure == null)
+						failure = cause instanceof IOException ? (IOException) cause : new IOException(cause
+								.toString());
+				}
+			}
+			if (failure != null)
+				throw failure;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Fetch one URI into the refs of its remote only
+	 */
+	private static String fetch(File repository, URIish uri, List<RefSpec> specs) throws IOException {
+		List<String> args = new ArrayList<String>(Arrays.asList("-c", "gc.auto=0", "fetch", "--no-write-fetch-head",
+				uri.toString()));
+		for (RefSpec spec : specs)
+			args.add(spec.toString());
+		return GitCommand.run(repository, args.toArray(new String[args.size()]));
+	}
+}
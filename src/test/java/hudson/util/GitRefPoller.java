@@ -0,0 +1,79 @@
+package hudson.util;
+
+import hudson.model.AbstractProject;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.spearce.jgit.transport.RemoteConfig;
+import org.spearce.jgit.transport.URIish;
+
+/**
+ * Polls Git remotes by listing their branch heads, <tt>ls-remote</tt> style,
+ * before asking GitSCM.
+ *
+ * When no head moved since GitSCM last found nothing to build, there cannot be
+ * a new commit on any tip branch, and the full poll of GitSCM, which fetches,
+ * is skipped. Otherwise GitSCM decides. The heads become the new reference only
+ * when it finds no changes: until the change is built, every poll goes to
+ * GitSCM, so that a build dropped from the queue does not lose the change.
+ *
+ * FIXME the revisions GitSCM last built are not available to compare with in
+ * this version of the plugin
+ */
+public class GitRefPoller {
+	private final List<RemoteConfig> remotes;
+	/**
+	 * heads when GitSCM last found no changes
+	 */
+	private Map<String, String> lastHeads;
+	private int fullPolls;
+
+	public GitRefPoller(List<RemoteConfig> remotes) {
+		this.remotes = remotes;
+	}
+
+	/**
+	 * @return remote name and branch of every head, with the commit it
+	 *         points to
+	 */
+	public Map<String, String> listHeads() throws IOException {
+		Map<String, String> heads = new TreeMap<String, String>();
+		for (RemoteConfig remote : remotes) {
+			for (URIish uri : remote.getURIs()) {
+				for (String line : GitCommand.run(null, "ls-remote", "--heads", uri.toString()).split("\n")) {
+					String[] fields = line.trim().split("\\s+");
+					if (fields.length == 2)
+						heads.put(remote.getName() + " " + fields[1], fields[0]);
+				}
+			}
+		}
+		return heads;
+	}
+
+	/**
+	 * @return true if the project has changes to build
+	 */
+	public synchronized boolean poll(AbstractProject<?, ?> project, TaskListener listener) throws IOException {
+		Map<String, String> heads = listHeads();
+		if (heads.equals(lastHeads)) {
+			listener.getLogger().println("No branch head moved in " + heads.size() + " heads");
+			return false;
+		}
+		fullPolls++;
+		boolean changes = project.pollSCMChanges(listener);
+		if (!changes)
+			lastHeads = heads;
+		return changes;
+	}
+
+	/**
+	 * @return how many polls were passed on to GitSCM
+	 */
+	public synchronized int getFullPolls() {
+		return fullPolls;
+	}
+}
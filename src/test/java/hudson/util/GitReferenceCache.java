@@ -0,0 +1,71 @@
+package hudson.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Shared object store for the workspaces cloning the same remote.
+ *
+ * For each remote URL, a bare mirror is kept under the cache root and
+ * refreshed with a fetch. {@link #seed(String, File)} clones a workspace with
+ * <tt>--reference</tt> to the mirror, so that it borrows the objects through
+ * <tt>objects/info/alternates</tt> instead of copying them. GitSCM then finds
+ * an existing repository in the workspace, and only fetches what the mirror
+ * lacks.
+ *
+ * FIXME GitSCM clones with no <tt>--reference</tt> option of its own, so the
+ * sharing only applies to workspaces seeded before their first build
+ */
+public class GitReferenceCache {
+	private static final Logger LOGGER = Logger.getLogger(GitReferenceCache.class.getName());
+
+	private final File root;
+
+	public GitReferenceCache(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * @return the mirror directory for the given remote
+	 */
+	public File getMirror(String url) {
+		String name = url.replaceAll("[^A-Za-z0-9._-]", "_");
+		if (name.length() > 64)
+			name = name.substring(name.length() - 64);
+		return new File(root, name + "-" + Integer.toHexString(url.hashCode()) + ".git");
+	}
+
+	/**
+	 * Create or refresh the mirror of the given remote
+	 *
+	 * @return the mirror directory
+	 */
+	public synchronized File update(String url) throws IOException {
+		File mirror = getMirror(url);
+		if (new File(mirror, "objects").isDirectory()) {
+			GitCommand.run(mirror, "fetch", "--prune", "origin");
+		} else {
+			root.mkdirs();
+			LOGGER.fine("Mirroring " + url + " into " + mirror);
+			GitCommand.run(root, "clone", "--mirror", url, mirror.getAbsolutePath());
+		}
+		return mirror;
+	}
+
+	/**
+	 * Clone the given remote into a workspace, borrowing objects from the
+	 * mirror. Does nothing if the workspace already is a repository.
+	 *
+	 * @return true if the workspace was cloned
+	 */
+	public boolean seed(String url, File workspace) throws IOException {
+		if (new File(workspace, ".git").exists())
+			return false;
+		File mirror = update(url);
+		workspace.getParentFile().mkdirs();
+		GitCommand.run(workspace.getParentFile(), "clone", "--no-checkout", "--reference", mirror.getAbsolutePath(),
+				url, workspace.getAbsolutePath());
+		return true;
+	}
+}
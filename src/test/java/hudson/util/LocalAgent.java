@@ -0,0 +1,269 @@
+package hudson.util;
+
+import hudson.FilePath;
+import hudson.remoting.Channel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A stand-in for a remote slave, connected to the master by a remoting
+ * {@link Channel} over pipes, no network involved.
+ *
+ * An in-process agent runs both ends of the channel in this JVM, so that the
+ * cost measured is the one of serialization and of the remoting protocol. A
+ * forked agent runs <tt>hudson.remoting.Launcher</tt> in a child JVM with the
+ * same class path, talking over its stdin and stdout like <tt>slave.jar</tt>
+ * does.
+ *
+ * Agents are not Hudson nodes and no build is scheduled on them; tests use
+ * their {@link Channel} and {@link #getRoot()} directly.
+ */
+public class LocalAgent {
+	private static final int PIPE_SIZE = 64 * 1024;
+
+	private final String name;
+	private final File root;
+	private final Channel channel;
+	private final ExecutorService executor;
+
+	/**
+	 * agent end of the channel, in-process agents only
+	 */
+	private Channel agentChannel;
+
+	/**
+	 * forked agents only
+	 */
+	private Process process;
+
+	private LocalAgent(String name, File root, Channel channel, ExecutorService executor) {
+		this.name = name;
+		this.root = root;
+		this.channel = channel;
+		this.executor = executor;
+	}
+
+	/**
+	 * Start an agent in this JVM.
+	 *
+	 * @param root the agent file system root
+	 */
+	public static LocalAgent inProcess(String name, File root) throws IOException {
+		Pipe toAgent = new Pipe(PIPE_SIZE);
+		Pipe toMaster = new Pipe(PIPE_SIZE);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		// the agent end must exist before the master end waits for its preamble
+		final Channel[] agentChannel = new Channel[1];
+		final IOException[] failure = new IOException[1];
+		final InputStream agentIn = toAgent.in;
+		final OutputStream agentOut = toMaster.out;
+		final ExecutorService agentExecutor = executor;
+		final String agentName = name;
+		Thread t = new Thread("Starting agent " + name) {
+			@Override
+			public void run() {
+				try {
+					agentChannel[0] = new Channel(agentName + " (agent side)", agentExecutor, agentIn, agentOut);
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		};
+		t.start();
+		Channel channel = new Channel(name, executor, toMaster.in, toAgent.out);
+		try {
+			t.join();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		if (failure[0] != null)
+			throw failure[0];
+		LocalAgent agent = new LocalAgent(name, root, channel, executor);
+		agent.agentChannel = agentChannel[0];
+		return agent;
+	}
+
+	/**
+	 * Start an agent in a child JVM.
+	 *
+	 * @param root the agent file system root
+	 */
+	public static LocalAgent forked(String name, File root) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		final Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				"hudson.remoting.Launcher").start();
+		new StderrCopier(name + " stderr", process.getErrorStream(), System.err).start();
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Channel channel = new Channel(name, executor, process.getInputStream(), process.getOutputStream());
+		LocalAgent agent = new LocalAgent(name, root, channel, executor);
+		agent.process = process;
+		return agent;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * @return the agent root, as seen from the master
+	 */
+	public FilePath getRoot() {
+		return new FilePath(channel, root.getAbsolutePath());
+	}
+
+	public void close() throws IOException, InterruptedException {
+		channel.close();
+		if (agentChannel != null)
+			agentChannel.close();
+		if (process != null) {
+			process.getOutputStream().close();
+			process.waitFor();
+		}
+		executor.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * In-memory pipe. {@link java.io.PipedInputStream} is unusable here: it
+	 * breaks when a thread that wrote to it dies, and polls once a second.
+	 */
+	static class Pipe {
+		private final byte[] buf;
+		private int readPos, count;
+		private boolean closed;
+
+		final InputStream in = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return Pipe.this.read(b, off, len);
+			}
+
+			@Override
+			public int available() {
+				synchronized (Pipe.this) {
+					return count;
+				}
+			}
+
+			@Override
+			public void close() {
+				Pipe.this.close();
+			}
+		};
+
+		final OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				Pipe.this.write(b, off, len);
+			}
+
+			@Override
+			public void close() {
+				Pipe.this.close();
+			}
+		};
+
+		Pipe(int size) {
+			buf = new byte[size];
+		}
+
+		synchronized int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			try {
+				while (count == 0) {
+					if (closed)
+						return -1;
+					wait();
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			int n = Math.min(len, count);
+			for (int i = 0; i < n; i++)
+				b[off + i] = buf[(readPos + i) % buf.length];
+			readPos = (readPos + n) % buf.length;
+			count -= n;
+			notifyAll();
+			return n;
+		}
+
+		synchronized void write(byte[] b, int off, int len) throws IOException {
+			try {
+				while (len > 0) {
+					while (count == buf.length && !closed)
+						wait();
+					if (closed)
+						throw new IOException("Pipe closed");
+					int n = Math.min(len, buf.length - count);
+					int writePos = (readPos + count) % buf.length;
+					for (int i = 0; i < n; i++)
+						buf[(writePos + i) % buf.length] = b[off + i];
+					count += n;
+					off += n;
+					len -= n;
+					notifyAll();
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+
+		synchronized void close() {
+			closed = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Drains the stderr of a forked agent. Does not close the output stream.
+	 */
+	private static class StderrCopier extends Thread {
+		private final InputStream in;
+		private final OutputStream out;
+
+		StderrCopier(String name, InputStream in, OutputStream out) {
+			super(name);
+			this.in = in;
+			this.out = out;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			byte[] buf = new byte[8192];
+			try {
+				int n;
+				while ((n = in.read(buf)) != -1)
+					out.write(buf, 0, n);
+			} catch (IOException e) {
+				// child is gone
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package hudson.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Sends notification mails off the build executor.
+ *
+ * Messages are queued by {@link #enqueue(MimeMessage)}, which returns at once,
+ * and sent by a single daemon thread in batches of up to <tt>batchSize</tt>
+ * through a pluggable {@link Transport}. In synchronous mode messages are sent
+ * by the calling thread instead, which is how Hudson sends mails today.
+ */
+public class MailQueue implements Runnable {
+	private static final Logger LOGGER = Logger.getLogger(MailQueue.class.getName());
+
+	/**
+	 * Delivers a batch of messages.
+	 */
+	public interface Transport {
+		void send(List<MimeMessage> batch) throws MessagingException;
+	}
+
+	/**
+	 * Keeps messages in memory, for tests.
+	 */
+	public static class CapturingTransport implements Transport {
+		private final List<MimeMessage> messages = Collections.synchronizedList(new ArrayList<MimeMessage>());
+		private final long delay;
+
+		public CapturingTransport() {
+			this(0);
+		}
+
+		/**
+		 * @param delay milliseconds to wait on each batch, to simulate a slow
+		 *            SMTP server
+		 */
+		public CapturingTransport(long delay) {
+			this.delay = delay;
+		}
+
+		public void send(List<MimeMessage> batch) throws MessagingException {
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					throw new MessagingException("Interrupted", e);
+				}
+			}
+			messages.addAll(batch);
+		}
+
+		public List<MimeMessage> getMessages() {
+			return messages;
+		}
+	}
+
+	/**
+	 * Sends each batch over a single SMTP connection.
+	 */
+	public static class SmtpTransport implements Transport {
+		private final Session session;
+
+		public SmtpTransport(Session session) {
+			this.session = session;
+		}
+
+		public void send(List<MimeMessage> batch) throws MessagingException {
+			javax.mail.Transport t = session.getTransport("smtp");
+			t.connect();
+			try {
+				for (MimeMessage m : batch) {
+					t.sendMessage(m, m.getAllRecipients());
+				}
+			} finally {
+				t.close();
+			}
+		}
+	}
+
+	private final Transport transport;
+	private final int batchSize;
+	private final LinkedList<MimeMessage> queue = new LinkedList<MimeMessage>();
+	private boolean synchronous;
+	private Thread worker;
+
+	/**
+	 * messages enqueued but not sent (or failed) yet
+	 */
+	private int pending;
+	private int sent, failed, batches;
+
+	public MailQueue(Transport transport, int batchSize) {
+		this.transport = transport;
+		this.batchSize = batchSize;
+	}
+
+	public synchronized void setSynchronous(boolean synchronous) {
+		this.synchronous = synchronous;
+	}
+
+	/**
+	 * Queue a message for sending. Never blocks on the transport unless the
+	 * queue is synchronous.
+	 */
+	public void enqueue(MimeMessage message) throws MessagingException {
+		synchronized (this) {
+			if (!synchronous) {
+				queue.add(message);
+				pending++;
+				if (worker == null) {
+					worker = new Thread(this, "Mail queue");
+					worker.setDaemon(true);
+					worker.start();
+				}
+				notifyAll();
+				return;
+			}
+		}
+		transport.send(Collections.singletonList(message));
+		synchronized (this) {
+			sent++;
+			batches++;
+		}
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				List<MimeMessage> batch = new ArrayList<MimeMessage>();
+				synchronized (this) {
+					while (queue.isEmpty() || worker != Thread.currentThread()) {
+						if (worker != Thread.currentThread()) {
+							// shut down while sending
+							return;
+						}
+						wait();
+					}
+					while (!queue.isEmpty() && batch.size() < batchSize) {
+						batch.add(queue.removeFirst());
+					}
+				}
+				boolean success = false;
+				try {
+					transport.send(batch);
+					success = true;
+				} catch (MessagingException e) {
+					LOGGER.log(Level.WARNING, "Failed to send " + batch.size() + " e-mails", e);
+				} finally {
+					synchronized (this) {
+						if (success) {
+							sent += batch.size();
+						} else {
+							failed += batch.size();
+						}
+						batches++;
+						pending -= batch.size();
+						notifyAll();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// shut down
+		}
+	}
+
+	/**
+	 * Wait until all queued messages were handed to the transport.
+	 *
+	 * @return false if the timeout elapsed first
+	 */
+	public synchronized boolean flush(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (pending > 0) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+
+	/**
+	 * Stop the sending thread, dropping whatever is still queued; dropped
+	 * messages count as failed.
+	 */
+	public void shutdown() throws InterruptedException {
+		Thread t;
+		synchronized (this) {
+			t = worker;
+			worker = null;
+		}
+		if (t != null) {
+			t.interrupt();
+			t.join();
+		}
+		synchronized (this) {
+			if (!queue.isEmpty()) {
+				LOGGER.warning("Dropping " + queue.size() + " e-mails on shutdown");
+				failed += queue.size();
+				pending -= queue.size();
+				queue.clear();
+				notifyAll();
+			}
+		}
+	}
+
+	public synchronized int getSent() {
+		return sent;
+	}
+
+	public synchronized int getFailed() {
+		return failed;
+	}
+
+	public synchronized int getBatches() {
+		return batches;
+	}
+}
@@ -0,0 +1,74 @@
+package hudson.util;
+
+import hudson.Launcher;
+import hudson.model.Action;
+import hudson.model.Build;
+import hudson.model.BuildListener;
+import hudson.model.Descriptor;
+import hudson.model.Project;
+import hudson.tasks.Builder;
+
+/**
+ * {@link Builder} doing no work in-process, unlike the <tt>Shell</tt> builder
+ * which forks a process per build, so that tests can drive as many builds as
+ * the controller can schedule.
+ */
+public class NoOpBuilder extends Builder {
+    /**
+     * Notified from the executor thread when a build reaches its builder.
+     */
+    public interface Listener {
+        void performed(Build<?, ?> build);
+    }
+
+    private transient final Listener listener;
+    private final boolean succeed;
+
+    public NoOpBuilder() {
+        this(null);
+    }
+
+    /**
+     * @param listener
+     *            notified of each build, may be null
+     */
+    public NoOpBuilder(Listener listener) {
+        this(listener, true);
+    }
+
+    /**
+     * @param listener
+     *            notified of each build, may be null
+     * @param succeed
+     *            false to fail the builds
+     */
+    public NoOpBuilder(Listener listener, boolean succeed) {
+        this.listener = listener;
+        this.succeed = succeed;
+    }
+
+    public boolean prebuild(Build<?, ?> build, BuildListener listener) {
+        return true;
+    }
+
+    public boolean perform(Build<?, ?> build, Launcher launcher, BuildListener listener) {
+        if (this.listener != null)
+            this.listener.performed(build);
+        return succeed;
+    }
+
+    public Action getProjectAction(Project<?, ?> project) {
+        return null;
+    }
+
+    public Descriptor<Builder> getDescriptor() {
+        return DESCRIPTOR;
+    }
+
+    public static final Descriptor<Builder> DESCRIPTOR = new Descriptor<Builder>(NoOpBuilder.class) {
+        @Override
+        public String getDisplayName() {
+            return "No-op builder";
+        }
+    };
+}
@@ -0,0 +1,144 @@
+package hudson.util;
+
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Build;
+import hudson.model.BuildListener;
+import hudson.model.Project;
+import hudson.model.User;
+import hudson.tasks.ArtifactArchiver;
+import hudson.tasks.MailSender;
+import hudson.tasks.Mailer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * {@link Mailer} that composes the notification during the build but leaves
+ * sending to a {@link MailQueue}, so that a slow SMTP server does not hold the
+ * executor.
+ *
+ * With a {@link CulpritTracker}, the individuals notified are the culprits it
+ * keeps, instead of the ones {@link MailSender} finds by walking back over the
+ * previous builds.
+ *
+ * FIXME <tt>_perform()</tt> is a copy of the Hudson one, it would be nice to
+ * have a factory method for the {@link MailSender}
+ */
+public class QueuedMailer extends Mailer {
+    private static final Logger LOGGER = Logger.getLogger(QueuedMailer.class.getName());
+
+    private transient final MailQueue queue;
+
+    private transient CulpritTracker culpritTracker;
+
+    public QueuedMailer(MailQueue queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * Have every build recorded by the given tracker as it is notified, and
+     * its culprits notified when sending to individuals.
+     */
+    public void setCulpritTracker(CulpritTracker culpritTracker) {
+        this.culpritTracker = culpritTracker;
+    }
+
+    /**
+     * Called with the mail composed for each build, null if none. Tests
+     * override this to hold a reference to the last mail.
+     */
+    protected void composed(MimeMessage mail) {
+    }
+
+    @Override
+    public <P extends Project<P, B>, B extends Build<P, B>> boolean _perform(B build, Launcher launcher,
+            BuildListener listener) throws InterruptedException {
+        if (debug)
+            listener.getLogger().println("Running mailer");
+        final Set<User> culprits = culpritTracker == null ? null : culpritTracker.record(build);
+        // with a tracker, MailSender must not walk back over the builds
+        return new MailSender<P, B>(recipients, dontNotifyEveryUnstableBuild, sendToIndividuals && culprits == null) {
+            /** Check whether a path (/-separated) will be archived. */
+            @Override
+            public boolean artifactMatches(String path, B build) {
+                ArtifactArchiver aa = (ArtifactArchiver) build.getProject().getPublishers().get(
+                        ArtifactArchiver.DESCRIPTOR);
+                if (aa == null) {
+                    LOGGER.finer("No ArtifactArchiver found");
+                    return false;
+                }
+                ArtifactPatternMatcher matcher = ArtifactPatternMatcher.forArtifacts(aa.getArtifacts());
+                if (matcher.matches(path)) {
+                    LOGGER.log(Level.FINER, "DescriptorImpl.artifactMatches true for {0} against {1}",
+                            new Object[] { path, matcher.getArtifacts() });
+                    return true;
+                }
+                LOGGER.log(Level.FINER, "DescriptorImpl.artifactMatches for {0} matched none of {1}",
+                        new Object[] { path, matcher.getArtifacts() });
+                return false;
+            }
+
+            /**
+             * Compose the mail and queue it instead of sending it
+             */
+            @Override
+            public boolean execute(B build, BuildListener listener) throws InterruptedException {
+                try {
+                    MimeMessage mail = getMail(build, listener);
+                    if (mail != null && culprits != null && sendToIndividuals)
+                        addRecipients(mail, culprits, listener);
+                    composed(mail);
+                    if (mail != null) {
+                        Address[] allRecipients = mail.getAllRecipients();
+                        if (allRecipients != null) {
+                            StringBuffer buf = new StringBuffer("Queueing e-mails to:");
+                            for (Address a : allRecipients)
+                                buf.append(' ').append(a);
+                            listener.getLogger().println(buf);
+                            queue.enqueue(mail);
+                        } else {
+                            listener.getLogger().println(
+                                    "An attempt to send an e-mail" + " to empty list of recipients, ignored.");
+                        }
+                    }
+                } catch (MessagingException e) {
+                    e.printStackTrace(listener.error(e.getMessage()));
+                }
+
+                return true;
+            }
+        }.execute(build, listener);
+    }
+
+    /**
+     * Add the addresses of the given users to the recipients of a mail, the
+     * way {@link MailSender} does for the individuals it finds
+     */
+    private static void addRecipients(MimeMessage mail, Set<User> users, BuildListener listener)
+            throws MessagingException {
+        Set<Address> recipients = new HashSet<Address>();
+        if (mail.getAllRecipients() != null)
+            recipients.addAll(Arrays.asList(mail.getAllRecipients()));
+        for (User user : users) {
+            Mailer.UserProperty property = user.getProperty(Mailer.UserProperty.class);
+            String address = property == null ? null : Util.fixEmpty(property.getAddress());
+            if (address == null) {
+                listener.getLogger().println("Failed to resolve e-mail address for " + user);
+                continue;
+            }
+            InternetAddress recipient = new InternetAddress(address);
+            if (recipients.add(recipient))
+                mail.addRecipient(Message.RecipientType.TO, recipient);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package hudson.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.tmatesoft.svn.core.SVNException;
+
+/**
+ * Pushes commits to Hudson instead of waiting for cron polling.
+ *
+ * {@link #install()} writes a <tt>post-commit</tt> hook into a local Subversion
+ * repository which appends the committed revision to a notification file. A
+ * watcher thread tails that file and runs a {@link SubversionPollingCoordinator}
+ * tick for every notification, so only the projects affected by the commit are
+ * scheduled, right away.
+ *
+ * The hook is a shell script, hence this only works where <tt>sh</tt> does.
+ */
+public class SubversionCommitNotifier implements Runnable {
+	private static final Logger LOGGER = Logger.getLogger(SubversionCommitNotifier.class.getName());
+
+	/**
+	 * how often the notification file is checked, in milliseconds
+	 */
+	private static final int WATCH_INTERVAL = 5;
+
+	private final File repository;
+	private final File notifications;
+	private final SubversionPollingCoordinator coordinator;
+	private volatile Thread watcher;
+	private volatile int notificationCount;
+
+	/**
+	 * end of the notifications already consumed, only used by the watcher
+	 * once started
+	 */
+	private long offset;
+
+	public SubversionCommitNotifier(File repository, SubversionPollingCoordinator coordinator) {
+		this.repository = repository;
+		this.notifications = new File(repository, "hudson-notifications");
+		this.coordinator = coordinator;
+	}
+
+	/**
+	 * Install the <tt>post-commit</tt> hook in the repository.
+	 */
+	public void install() throws IOException {
+		File hook = new File(new File(repository, "hooks"), "post-commit");
+		FileWriter out = new FileWriter(hook);
+		try {
+			out.write("#!/bin/sh\n");
+			out.write("echo \"$2\" >> \"" + notifications.getAbsolutePath() + "\"\n");
+		} finally {
+			out.close();
+		}
+		notifications.createNewFile();
+		try {
+			if (Runtime.getRuntime().exec(new String[] { "chmod", "+x", hook.getPath() }).waitFor() != 0) {
+				throw new IOException("Unable to make " + hook + " executable");
+			}
+		} catch (InterruptedException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Set the coordinator baseline and start watching for commits.
+	 */
+	public synchronized void start() throws SVNException {
+		if (watcher != null) {
+			return;
+		}
+		// before the baseline: a commit in between is seen twice rather than
+		// missed
+		offset = notifications.length();
+		coordinator.poll();
+		watcher = new Thread(this, "Subversion commit notifier for " + repository);
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	public synchronized void stop() throws InterruptedException {
+		Thread t = watcher;
+		watcher = null;
+		if (t != null) {
+			t.interrupt();
+			t.join();
+		}
+	}
+
+	public void run() {
+		try {
+			while (watcher == Thread.currentThread()) {
+				long length = notifications.length();
+				long consumed = length > offset ? consume(offset, length) : offset;
+				if (consumed == offset) {
+					// nothing new, or a line still being written
+					Thread.sleep(WATCH_INTERVAL);
+				}
+				offset = consumed;
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		}
+	}
+
+	/**
+	 * Read complete lines between offset and length, and run one coordinator
+	 * tick for all of them: several commits in a row need only one tick.
+	 *
+	 * @return the offset after the last complete line
+	 */
+	private long consume(long offset, long length) {
+		try {
+			RandomAccessFile in = new RandomAccessFile(notifications, "r");
+			try {
+				in.seek(offset);
+				byte[] buf = new byte[(int) (length - offset)];
+				in.readFully(buf);
+				int end = new String(buf, "US-ASCII").lastIndexOf('\n');
+				if (end == -1) {
+					// the hook is still writing
+					return offset;
+				}
+				LOGGER.log(Level.FINE, "Commit notification: {0}", new String(buf, 0, end, "US-ASCII"));
+				notificationCount++;
+				coordinator.poll();
+				return offset + end + 1;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to read " + notifications, e);
+		} catch (SVNException e) {
+			LOGGER.log(Level.WARNING, "Unable to poll " + repository, e);
+		}
+		return length;
+	}
+
+	/**
+	 * @return the number of times the coordinator was run because of a commit
+	 */
+	public int getNotificationCount() {
+		return notificationCount;
+	}
+}
@@ -0,0 +1,142 @@
+package hudson.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.ISVNEventHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNEvent;
+import org.tmatesoft.svn.core.wc.SVNEventAction;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNUpdateClient;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+/**
+ * Checks out or updates the modules of a SubversionSCM configuration at once,
+ * with a bounded number of concurrent checkouts.
+ *
+ * Each module gets its own SVNKit client, as clients are not thread-safe, and
+ * its own log buffer. The clients take their sessions from the shared
+ * {@link SubversionSessionPool}. Logs are written in the order of the modules
+ * when all are done, so they do not interleave.
+ *
+ * FIXME SubversionSCM still walks its locations in a loop of its own; a
+ * workspace checked out here beforehand only leaves it up-to-date modules to
+ * update
+ */
+public class SubversionParallelCheckout {
+	private final int maxConcurrent;
+
+	/**
+	 * @param maxConcurrent
+	 *            maximum number of modules checked out at once
+	 */
+	public SubversionParallelCheckout(int maxConcurrent) {
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	/**
+	 * Check out the given modules, or update them if already checked out
+	 *
+	 * @param locations
+	 *            module URLs
+	 * @param localDirs
+	 *            module directories, relative to the workspace
+	 * @return the revision of each module
+	 */
+	public long[] checkout(String[] locations, String[] localDirs, final File workspace, PrintStream log)
+			throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(maxConcurrent,
+				locations.length)));
+		try {
+			List<Future<Long>> revisions = new ArrayList<Future<Long>>();
+			List<ByteArrayOutputStream> logs = new ArrayList<ByteArrayOutputStream>();
+			for (int i = 0; i < locations.length; i++) {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				logs.add(buffer);
+				revisions.add(executor.submit(new Module(locations[i], new File(workspace, localDirs[i]),
+						new PrintStream(buffer))));
+			}
+			long[] result = new long[locations.length];
+			IOException failure = null;
+			for (int i = 0; i < locations.length; i++) {
+				try {
+					result[i] = revisions.get(i).get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					new PrintStream(logs.get(i)).println(cause.getMessage());
+					if (failure == null)
+						failure = new IOException("Failed to check out " + locations[i] + ": " + cause.getMessage());
+				}
+				log.print(logs.get(i).toString());
+			}
+			if (failure != null)
+				throw failure;
+			return result;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Checkout or update of one module
+	 */
+	private static class Module implements Callable<Long>, ISVNEventHandler {
+		private final String location;
+		private final File dir;
+		private final PrintStream log;
+
+		Module(String location, File dir, PrintStream log) {
+			this.location = location;
+			this.dir = dir;
+			this.log = log;
+		}
+
+		public Long call() throws SVNException {
+			SubversionSessionPool.Lease sessions = SubversionSessionPool.getInstance().lease();
+			boolean succeeded = false;
+			try {
+				SVNUpdateClient client = SVNClientManager.newInstance(SVNWCUtil.createDefaultOptions(true), sessions)
+						.getUpdateClient();
+				client.setEventHandler(this);
+				long revision;
+				if (new File(dir, ".svn").isDirectory()) {
+					log.println("Updating " + location);
+					revision = client.doUpdate(dir, SVNRevision.HEAD, true);
+				} else {
+					log.println("Checking out " + location);
+					revision = client.doCheckout(SVNURL.parseURIDecoded(location), dir, SVNRevision.HEAD,
+							SVNRevision.HEAD, true);
+				}
+				succeeded = true;
+				return revision;
+			} finally {
+				sessions.finish(succeeded);
+			}
+		}
+
+		public void handleEvent(SVNEvent event, double progress) {
+			if (event.getAction() == SVNEventAction.UPDATE_ADD)
+				log.println("A         " + event.getFile());
+			else if (event.getAction() == SVNEventAction.UPDATE_UPDATE)
+				log.println("U         " + event.getFile());
+		}
+
+		public void checkCancelled() throws SVNCancelException {
+			if (Thread.currentThread().isInterrupted())
+				throw new SVNCancelException();
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package hudson.util;
+
+import hudson.model.AbstractProject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * Polls Subversion once per repository root instead of once per project.
+ *
+ * Projects are registered with the root of the repository they live in and
+ * their path below that root. Each call to {@link #poll()} is one tick: the
+ * head revision of every root is fetched once, and when it moved the log since
+ * the previous tick is fetched once and its changed paths are fanned out to the
+ * projects living under them. Only those projects get scheduled.
+ *
+ * The number of repository round-trips is counted so that tests can compare it
+ * against the one-call-per-project cost of independent {@link hudson.triggers.SCMTrigger}s.
+ */
+public class SubversionPollingCoordinator {
+	private static final Logger LOGGER = Logger.getLogger(SubversionPollingCoordinator.class.getName());
+
+	/**
+	 * A project and its path relative to the repository root, without leading
+	 * or trailing slashes ("" for the root itself).
+	 */
+	private static class Registration {
+		final AbstractProject<?,?> project;
+		final String path;
+
+		Registration(AbstractProject<?,?> project, String path) {
+			this.project = project;
+			this.path = path;
+		}
+
+		boolean isAffectedBy(String changedPath) {
+			if (path.length() == 0) {
+				return true;
+			}
+			String prefix = "/" + path;
+			return changedPath.equals(prefix) || changedPath.startsWith(prefix + "/");
+		}
+	}
+
+	private final Map<String, List<Registration>> projectsByRoot = new LinkedHashMap<String, List<Registration>>();
+
+	/**
+	 * last revision seen for each root, absent until the first tick.
+	 */
+	private final Map<String, Long> lastRevisions = new HashMap<String, Long>();
+
+	private int repositoryCalls;
+
+	/**
+	 * whether affected projects are actually scheduled, turn off to only
+	 * measure change detection.
+	 */
+	private boolean scheduleBuilds = true;
+
+	/**
+	 * Register a project for coordinated polling.
+	 *
+	 * @param project the project to schedule when its path changes
+	 * @param repositoryRoot the URL of the repository root
+	 * @param path the path of the project below the root
+	 */
+	public synchronized void register(AbstractProject<?,?> project, String repositoryRoot, String path) {
+		String root = trimSlashes(repositoryRoot);
+		List<Registration> registrations = projectsByRoot.get(root);
+		if (registrations == null) {
+			registrations = new ArrayList<Registration>();
+			projectsByRoot.put(root, registrations);
+		}
+		registrations.add(new Registration(project, trimSlashes(path)));
+	}
+
+	public synchronized void setScheduleBuilds(boolean scheduleBuilds) {
+		this.scheduleBuilds = scheduleBuilds;
+	}
+
+	/**
+	 * Run one polling tick over all registered repository roots.
+	 *
+	 * @return the projects affected by changes since the previous tick, in
+	 *         registration order
+	 */
+	public synchronized List<AbstractProject<?,?>> poll() throws SVNException {
+		List<AbstractProject<?,?>> affected = new ArrayList<AbstractProject<?,?>>();
+		for (Map.Entry<String, List<Registration>> e : projectsByRoot.entrySet()) {
+			affected.addAll(poll(e.getKey(), e.getValue()));
+		}
+		if (scheduleBuilds) {
+			for (AbstractProject<?,?> p : affected) {
+				p.scheduleBuild();
+			}
+		}
+		return affected;
+	}
+
+	private List<AbstractProject<?,?>> poll(String root, List<Registration> registrations) throws SVNException {
+		List<AbstractProject<?,?>> affected = new ArrayList<AbstractProject<?,?>>();
+		SubversionSessionPool pool = SubversionSessionPool.getInstance();
+		SVNRepository repository = pool.borrow(root);
+		boolean succeeded = false;
+		try {
+			long head = repository.getLatestRevision();
+			repositoryCalls++;
+			Long last = lastRevisions.put(root, head);
+			if (last == null || last.longValue() >= head) {
+				// first tick only establishes the baseline
+				succeeded = true;
+				return affected;
+			}
+
+			Set<String> changedPaths = changedPaths(repository, last.longValue() + 1, head);
+			for (Registration r : registrations) {
+				for (String changedPath : changedPaths) {
+					if (r.isAffectedBy(changedPath)) {
+						affected.add(r.project);
+						break;
+					}
+				}
+			}
+			LOGGER.log(Level.FINE, "{0} moved from r{1} to r{2}, {3} of {4} projects affected",
+					new Object[] { root, last, head, affected.size(), registrations.size() });
+			succeeded = true;
+			return affected;
+		} finally {
+			if (succeeded)
+				pool.release(root, repository);
+			else
+				pool.discard(root, repository);
+		}
+	}
+
+	private Set<String> changedPaths(SVNRepository repository, long from, long to) throws SVNException {
+		final Set<String> changedPaths = new TreeSet<String>();
+		repository.log(new String[] { "" }, from, to, true, false, new ISVNLogEntryHandler() {
+			@SuppressWarnings("unchecked")
+			public void handleLogEntry(SVNLogEntry logEntry) {
+				changedPaths.addAll((Collection<String>) logEntry.getChangedPaths().keySet());
+			}
+		});
+		repositoryCalls++;
+		return changedPaths;
+	}
+
+	/**
+	 * @return the number of repository round-trips made so far
+	 */
+	public synchronized int getRepositoryCalls() {
+		return repositoryCalls;
+	}
+
+	/**
+	 * @return the number of registered projects, i.e. the number of round-trips
+	 *         a tick would cost with independent polling
+	 */
+	public synchronized int getProjectCount() {
+		int count = 0;
+		for (List<Registration> registrations : projectsByRoot.values()) {
+			count += registrations.size();
+		}
+		return count;
+	}
+
+	private static String trimSlashes(String s) {
+		while (s.endsWith("/")) {
+			s = s.substring(0, s.length() - 1);
+		}
+		while (s.startsWith("/")) {
+			s = s.substring(1);
+		}
+		return s;
+	}
+}
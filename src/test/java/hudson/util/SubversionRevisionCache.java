@@ -0,0 +1,262 @@
+package hudson.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * Bounded, time based cache of Subversion location state: whether a URL exists
+ * and the last revision it changed in.
+ *
+ * Each lookup costs a single round-trip ({@link SVNRepository#info(String, long)})
+ * on a miss, and none on a hit. Entries expire after the configured time to live,
+ * and the least recently used entries are dropped once the cache is full. Code
+ * that knows the repository changed (a commit, an <tt>svn rm</tt>) should call
+ * {@link #invalidate(String)} so that the next lookup is fresh.
+ *
+ * One instance is shared by everything in the JVM, see {@link #getInstance()}.
+ */
+public class SubversionRevisionCache {
+	public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000;
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	private static final SubversionRevisionCache INSTANCE = new SubversionRevisionCache(DEFAULT_TIME_TO_LIVE,
+			DEFAULT_MAX_ENTRIES);
+
+	/**
+	 * State of one location.
+	 */
+	public static class Entry {
+		/**
+		 * last changed revision, or -1 if the location does not exist
+		 */
+		public final long revision;
+		final long timestamp;
+
+		Entry(long revision, long timestamp) {
+			this.revision = revision;
+			this.timestamp = timestamp;
+		}
+
+		public boolean exists() {
+			return revision != -1;
+		}
+	}
+
+	private final long timeToLive;
+	private final Map<String, Entry> entries;
+	private int hits, misses;
+
+	/**
+	 * incremented by each invalidation
+	 */
+	private long generation;
+
+	/**
+	 * number of round-trips in progress, by the generation they started in
+	 */
+	private final TreeMap<Long, Integer> fetches = new TreeMap<Long, Integer>();
+
+	/**
+	 * generation of the last invalidation of each URL invalidated while a
+	 * round-trip was in progress, and of the last {@link #invalidateAll()};
+	 * invalidations older than every round-trip in progress are dropped
+	 */
+	private final Map<String, Long> invalidations = new HashMap<String, Long>();
+	private long allInvalidated;
+
+	public SubversionRevisionCache(long timeToLive, final int maxEntries) {
+		this.timeToLive = timeToLive;
+		// access ordered, so that the eldest entry is the least recently used
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the cache shared across SCM instances
+	 */
+	public static SubversionRevisionCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Look up a location, hitting the repository only if it is not cached or
+	 * its entry expired.
+	 */
+	public Entry get(String url) throws SVNException {
+		String key = normalize(url);
+		long fetchedGeneration;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && currentTimeMillis() - entry.timestamp < timeToLive) {
+				hits++;
+				return entry;
+			}
+			misses++;
+			fetchedGeneration = generation;
+			Integer count = fetches.get(fetchedGeneration);
+			fetches.put(fetchedGeneration, count == null ? 1 : count + 1);
+		}
+		Entry entry = null;
+		try {
+			// don't hold the lock during the round-trip
+			entry = new Entry(fetchRevision(key), currentTimeMillis());
+		} finally {
+			synchronized (this) {
+				// invalidated during the round-trip, the revision may predate
+				// the change: let the next lookup fetch it again
+				if (entry != null && generationOf(key) <= fetchedGeneration)
+					entries.put(key, entry);
+				fetched(fetchedGeneration);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Forget a round-trip started in the given generation, and the
+	 * invalidations no round-trip in progress predates
+	 */
+	private void fetched(long fetchedGeneration) {
+		int count = fetches.remove(fetchedGeneration);
+		if (count > 1)
+			fetches.put(fetchedGeneration, count - 1);
+		if (fetches.isEmpty()) {
+			invalidations.clear();
+			return;
+		}
+		long oldest = fetches.firstKey();
+		for (Iterator<Long> it = invalidations.values().iterator(); it.hasNext();) {
+			if (it.next() <= oldest)
+				it.remove();
+		}
+	}
+
+	/**
+	 * @return the generation of the last invalidation of the given URL or of
+	 *         a parent of it
+	 */
+	private long generationOf(String key) {
+		long last = allInvalidated;
+		String url = key;
+		while (true) {
+			Long invalidated = invalidations.get(url);
+			if (invalidated != null)
+				last = Math.max(last, invalidated);
+			int slash = url.lastIndexOf('/');
+			if (slash <= 0)
+				return last;
+			url = url.substring(0, slash);
+		}
+	}
+
+	public boolean exists(String url) throws SVNException {
+		return get(url).exists();
+	}
+
+	public long getRevision(String url) throws SVNException {
+		return get(url).revision;
+	}
+
+	/**
+	 * Cached counterpart of <tt>SubversionSCM.repositoryLocationsExist()</tt>.
+	 *
+	 * @return true if all locations exist
+	 */
+	public boolean repositoryLocationsExist(String[] urls) throws SVNException {
+		for (String url : urls) {
+			if (!exists(url)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Drop the given URL and everything below it, typically a repository root
+	 * after a commit.
+	 */
+	public synchronized void invalidate(String url) {
+		String prefix = normalize(url);
+		++generation;
+		// only the round-trips in progress need to know
+		if (!fetches.isEmpty())
+			invalidations.put(prefix, generation);
+		for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+			String key = it.next();
+			if (key.equals(prefix) || key.startsWith(prefix + "/")) {
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		entries.clear();
+		invalidations.clear();
+		allInvalidated = ++generation;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of invalidations kept for the round-trips in progress
+	 */
+	public synchronized int getPendingInvalidations() {
+		return invalidations.size();
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return -1 if the location does not exist
+	 */
+	protected long fetchRevision(String url) throws SVNException {
+		SubversionSessionPool pool = SubversionSessionPool.getInstance();
+		SVNRepository repository = pool.borrow(url);
+		boolean succeeded = false;
+		try {
+			SVNDirEntry entry = repository.info("", -1);
+			succeeded = true;
+			return entry == null ? -1 : entry.getRevision();
+		} finally {
+			if (succeeded)
+				pool.release(url, repository);
+			else
+				pool.discard(url, repository);
+		}
+	}
+
+	/**
+	 * Overridable for tests that need to move time forward.
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private static String normalize(String url) {
+		while (url.endsWith("/")) {
+			url = url.substring(0, url.length() - 1);
+		}
+		return url;
+	}
+}
@@ -0,0 +1,261 @@
+package hudson.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.io.ISVNRepositoryPool;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * Bounded pool of SVNKit repository sessions, per repository URL.
+ *
+ * {@link #borrow(String)} hands out an idle session for the URL if there is
+ * one, and opens a new one otherwise; {@link #release(String, SVNRepository)}
+ * gives it back, and {@link #discard(String, SVNRepository)} closes it instead
+ * when an operation on it failed. At most <tt>maxIdlePerUrl</tt> sessions are
+ * kept per URL, extra ones are closed on release, and sessions idle for longer
+ * than the idle timeout are closed on the next borrow or {@link #evictIdle()}.
+ *
+ * SVNKit clients use the pool through a {@link Lease}. One instance is shared
+ * by the polling and checkout facilities of the tester, see
+ * {@link #getInstance()}.
+ */
+public class SubversionSessionPool {
+	public static final int DEFAULT_MAX_IDLE_PER_URL = 4;
+	public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+	private static final SubversionSessionPool INSTANCE = new SubversionSessionPool(DEFAULT_MAX_IDLE_PER_URL,
+			DEFAULT_IDLE_TIMEOUT);
+
+	/**
+	 * A session waiting in the pool
+	 */
+	private static class Idle {
+		final SVNRepository repository;
+		final long since;
+
+		Idle(SVNRepository repository, long since) {
+			this.repository = repository;
+			this.since = since;
+		}
+	}
+
+	private final int maxIdlePerUrl;
+	private final long idleTimeout;
+
+	/**
+	 * idle sessions by URL, most recently released first
+	 */
+	private final Map<String, LinkedList<Idle>> idle = new HashMap<String, LinkedList<Idle>>();
+	private int created, reused, closed, borrowed;
+
+	public SubversionSessionPool(int maxIdlePerUrl, long idleTimeout) {
+		this.maxIdlePerUrl = maxIdlePerUrl;
+		this.idleTimeout = idleTimeout;
+	}
+
+	public static SubversionSessionPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return a session on the given URL, to give back with
+	 *         {@link #release(String, SVNRepository)}
+	 */
+	public SVNRepository borrow(String url) throws SVNException {
+		synchronized (this) {
+			evictIdle();
+			LinkedList<Idle> sessions = idle.get(url);
+			if (sessions != null && !sessions.isEmpty()) {
+				reused++;
+				borrowed++;
+				return sessions.removeFirst().repository;
+			}
+		}
+		// opening a session may take a round-trip, do it unlocked
+		SVNRepository repository = SVNRepositoryFactory.create(SVNURL.parseURIDecoded(url));
+		synchronized (this) {
+			created++;
+			borrowed++;
+		}
+		return repository;
+	}
+
+	/**
+	 * Give back a session borrowed for the given URL
+	 */
+	public void release(String url, SVNRepository repository) {
+		synchronized (this) {
+			borrowed--;
+			LinkedList<Idle> sessions = idle.get(url);
+			if (sessions == null) {
+				sessions = new LinkedList<Idle>();
+				idle.put(url, sessions);
+			}
+			if (sessions.size() < maxIdlePerUrl) {
+				sessions.addFirst(new Idle(repository, currentTimeMillis()));
+				return;
+			}
+			closed++;
+		}
+		repository.closeSession();
+	}
+
+	/**
+	 * Close a session borrowed for the given URL instead of giving it back,
+	 * as its connection may be broken
+	 */
+	public void discard(String url, SVNRepository repository) {
+		synchronized (this) {
+			borrowed--;
+			closed++;
+		}
+		repository.closeSession();
+	}
+
+	/**
+	 * @return a repository pool for one SVNKit client manager, see
+	 *         {@link Lease}
+	 */
+	public Lease lease() {
+		return new Lease();
+	}
+
+	/**
+	 * Sessions of this pool borrowed by one SVNKit client, for
+	 * <tt>SVNClientManager.newInstance(options, lease)</tt>.
+	 *
+	 * The client does not give its sessions back, so they are kept borrowed
+	 * until {@link #finish(boolean)} is called once the client is done. A
+	 * client asking for a reusable session gets the one the lease already has
+	 * for the URL, if any.
+	 */
+	public class Lease implements ISVNRepositoryPool {
+		private final List<String> urls = new ArrayList<String>();
+		private final List<SVNRepository> repositories = new ArrayList<SVNRepository>();
+		private ISVNAuthenticationManager authenticationManager;
+		private ISVNCanceller canceller;
+
+		public synchronized SVNRepository createRepository(SVNURL url, boolean mayReuse) throws SVNException {
+			String key = url.toDecodedString();
+			if (mayReuse) {
+				int i = urls.indexOf(key);
+				if (i >= 0)
+					return repositories.get(i);
+			}
+			SVNRepository repository = borrow(key);
+			if (authenticationManager != null)
+				repository.setAuthenticationManager(authenticationManager);
+			if (canceller != null)
+				repository.setCanceller(canceller);
+			urls.add(key);
+			repositories.add(repository);
+			return repository;
+		}
+
+		public synchronized void setAuthenticationManager(ISVNAuthenticationManager authenticationManager) {
+			this.authenticationManager = authenticationManager;
+		}
+
+		public synchronized void setCanceller(ISVNCanceller canceller) {
+			this.canceller = canceller;
+		}
+
+		/**
+		 * Sessions stay borrowed until {@link #finish(boolean)}
+		 */
+		public void shutdownConnections(boolean shutdownAll) {
+		}
+
+		public void dispose() {
+		}
+
+		/**
+		 * Give the sessions back to the pool, or close them if the client
+		 * failed
+		 */
+		public synchronized void finish(boolean succeeded) {
+			for (int i = 0; i < repositories.size(); i++) {
+				if (succeeded)
+					release(urls.get(i), repositories.get(i));
+				else
+					discard(urls.get(i), repositories.get(i));
+			}
+			urls.clear();
+			repositories.clear();
+		}
+	}
+
+	/**
+	 * Close the sessions idle for longer than the idle timeout
+	 *
+	 * @return the number of sessions closed
+	 */
+	public synchronized int evictIdle() {
+		long now = currentTimeMillis();
+		int evicted = 0;
+		for (Iterator<LinkedList<Idle>> i = idle.values().iterator(); i.hasNext();) {
+			LinkedList<Idle> sessions = i.next();
+			// the oldest are last
+			while (!sessions.isEmpty() && now - sessions.getLast().since > idleTimeout) {
+				sessions.removeLast().repository.closeSession();
+				evicted++;
+			}
+			if (sessions.isEmpty())
+				i.remove();
+		}
+		closed += evicted;
+		return evicted;
+	}
+
+	/**
+	 * Close all idle sessions
+	 */
+	public synchronized void closeAll() {
+		for (LinkedList<Idle> sessions : idle.values()) {
+			for (Idle session : sessions) {
+				session.repository.closeSession();
+				closed++;
+			}
+		}
+		idle.clear();
+	}
+
+	public synchronized int getCreated() {
+		return created;
+	}
+
+	public synchronized int getReused() {
+		return reused;
+	}
+
+	/**
+	 * @return sessions created and not closed yet, borrowed or idle
+	 */
+	public synchronized int getOpen() {
+		return created - closed;
+	}
+
+	/**
+	 * @return sessions borrowed and not released yet
+	 */
+	public synchronized int getBorrowed() {
+		return borrowed;
+	}
+
+	/**
+	 * Overridable for tests that need to move time forward.
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,254 @@
+package hudson.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Owns the temporary directories of a test run: Hudson homes, Subversion
+ * repositories and working copies, Git repositories.
+ *
+ * All directories are created below a single root per run, so nothing is left
+ * scattered in <tt>/tmp</tt>. {@link #cleanup()} deletes what was created since
+ * the previous cleanup, deleting subtrees in parallel, and can print a disk
+ * usage report first.
+ *
+ * System properties:
+ * <ul>
+ * <li><tt>hudson.tester.tmpdir</tt>: where to put the run root, defaults to
+ * <tt>java.io.tmpdir</tt>; <tt>ram</tt> picks a tmpfs such as
+ * <tt>/dev/shm</tt> when there is one</li>
+ * <li><tt>hudson.tester.keepTempDirs</tt>: don't delete anything, for
+ * post-mortem</li>
+ * <li><tt>hudson.tester.tempDirReport</tt>: print the disk usage of each
+ * directory before deleting it</li>
+ * </ul>
+ */
+public class TempDirManager {
+	private static final Logger LOGGER = Logger.getLogger(TempDirManager.class.getName());
+
+	/**
+	 * tmpfs mount points tried, in order, for <tt>hudson.tester.tmpdir=ram</tt>
+	 */
+	private static final String[] RAM_DISKS = { "/dev/shm", "/run/shm" };
+
+	private static TempDirManager instance;
+
+	private final File root;
+	private final List<File> dirs = new ArrayList<File>();
+	private boolean keep = Boolean.getBoolean("hudson.tester.keepTempDirs");
+	private boolean report = Boolean.getBoolean("hudson.tester.tempDirReport");
+
+	/**
+	 * Disk usage of a directory tree.
+	 */
+	public static class Usage {
+		public long files, directories, bytes;
+
+		void add(Usage u) {
+			files += u.files;
+			directories += u.directories;
+			bytes += u.bytes;
+		}
+
+		@Override
+		public String toString() {
+			return bytes / 1024 + "KB in " + files + " files and " + directories + " directories";
+		}
+	}
+
+	/**
+	 * @param base directory under which the run root is created
+	 */
+	public TempDirManager(File base) {
+		try {
+			root = File.createTempFile("hudson-tester", null, base);
+			root.delete();
+			if (!root.mkdirs())
+				throw new IOException("Unable to create " + root);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return the manager for this run, created on first use according to
+	 *         <tt>hudson.tester.tmpdir</tt>
+	 */
+	public static synchronized TempDirManager getInstance() {
+		if (instance == null) {
+			instance = new TempDirManager(selectBase(System.getProperty("hudson.tester.tmpdir")));
+			Runtime.getRuntime().addShutdownHook(new Thread("Temp dir cleanup") {
+				@Override
+				public void run() {
+					instance.deleteRoot();
+				}
+			});
+		}
+		return instance;
+	}
+
+	/**
+	 * @param setting a path, <tt>ram</tt> or null
+	 */
+	static File selectBase(String setting) {
+		if ("ram".equals(setting)) {
+			for (String ramDisk : RAM_DISKS) {
+				File dir = new File(ramDisk);
+				if (dir.isDirectory() && dir.canWrite())
+					return dir;
+			}
+			LOGGER.warning("No RAM disk found, using " + System.getProperty("java.io.tmpdir"));
+			setting = null;
+		}
+		return new File(setting != null ? setting : System.getProperty("java.io.tmpdir"));
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	public void setKeep(boolean keep) {
+		this.keep = keep;
+	}
+
+	public void setReport(boolean report) {
+		this.report = report;
+	}
+
+	/**
+	 * Create a new temporary directory below the run root
+	 */
+	public synchronized File createTempDir(String prefix) {
+		try {
+			File dir = File.createTempFile(prefix, null, root);
+			dir.delete();
+			dir.mkdir();
+			dirs.add(dir);
+			return dir;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Delete all directories created since the last cleanup.
+	 *
+	 * @return their total disk usage if reporting is on, null otherwise
+	 */
+	public Usage cleanup() {
+		List<File> toDelete;
+		synchronized (this) {
+			toDelete = new ArrayList<File>(dirs);
+			dirs.clear();
+		}
+		Usage total = null;
+		if (report) {
+			total = new Usage();
+			for (File dir : toDelete) {
+				Usage u = usage(dir);
+				System.out.println(dir + ": " + u);
+				total.add(u);
+			}
+			System.out.println("Total: " + total);
+		}
+		if (!keep)
+			deleteInParallel(toDelete);
+		return total;
+	}
+
+	/**
+	 * Delete the run root and everything in it.
+	 */
+	public void deleteRoot() {
+		if (keep)
+			return;
+		List<File> all = new ArrayList<File>();
+		all.add(root);
+		deleteInParallel(all);
+	}
+
+	/**
+	 * Delete the given trees, one task per top level entry so that large
+	 * trees are spread over several threads.
+	 */
+	private static void deleteInParallel(List<File> trees) {
+		List<File> entries = new ArrayList<File>();
+		for (File tree : trees) {
+			File[] children = tree.listFiles();
+			if (children != null) {
+				for (File child : children)
+					entries.add(child);
+			}
+		}
+		if (!entries.isEmpty()) {
+			int threads = Math.min(entries.size(), Runtime.getRuntime().availableProcessors() * 2);
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (final File entry : entries) {
+					futures.add(pool.submit(new Runnable() {
+						public void run() {
+							delete(entry);
+						}
+					}));
+				}
+				for (Future<?> f : futures)
+					f.get();
+			} catch (Exception e) {
+				LOGGER.log(Level.WARNING, "Failed to delete temporary directories", e);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		for (File tree : trees)
+			tree.delete();
+	}
+
+	/**
+	 * Delete recursively, without following symbolic links.
+	 */
+	static void delete(File file) {
+		if (file.isDirectory() && !isSymlink(file)) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				for (File child : children)
+					delete(child);
+			}
+		}
+		if (!file.delete() && file.exists())
+			LOGGER.fine("Unable to delete " + file);
+	}
+
+	public static Usage usage(File file) {
+		Usage u = new Usage();
+		if (file.isDirectory() && !isSymlink(file)) {
+			u.directories++;
+			File[] children = file.listFiles();
+			if (children != null) {
+				for (File child : children)
+					u.add(usage(child));
+			}
+		} else {
+			u.files++;
+			u.bytes += file.length();
+		}
+		return u;
+	}
+
+	private static boolean isSymlink(File file) {
+		try {
+			File parent = file.getParentFile();
+			File canonical = parent == null ? file : new File(parent.getCanonicalFile(), file.getName());
+			return !canonical.getCanonicalFile().equals(canonical.getAbsoluteFile());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package hudson.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class TempDirManagerTest extends TestCase {
+
+	private TempDirManager manager;
+
+	@Override
+	protected void setUp() throws Exception {
+		manager = new TempDirManager(new File(System.getProperty("java.io.tmpdir")));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		manager.deleteRoot();
+		assertFalse(manager.getRoot().exists());
+	}
+
+	private void createTree(File dir, int depth, int width) throws IOException {
+		for (int i = 0; i < width; i++) {
+			FileOutputStream out = new FileOutputStream(new File(dir, "file" + i));
+			out.write(new byte[1024]);
+			out.close();
+			if (depth > 0) {
+				File sub = new File(dir, "dir" + i);
+				sub.mkdir();
+				createTree(sub, depth - 1, width);
+			}
+		}
+	}
+
+	public void testCreatedBelowRoot() {
+		File dir = manager.createTempDir("hudson");
+		assertTrue(dir.isDirectory());
+		assertEquals(manager.getRoot(), dir.getParentFile());
+		assertTrue(dir.getName().startsWith("hudson"));
+	}
+
+	public void testCleanup() throws IOException {
+		File dir1 = manager.createTempDir("hudson");
+		File dir2 = manager.createTempDir("hudson-svntest");
+		createTree(dir1, 3, 4);
+		createTree(dir2, 1, 10);
+		manager.setReport(true);
+		TempDirManager.Usage usage = manager.cleanup();
+		assertFalse(dir1.exists());
+		assertFalse(dir2.exists());
+		assertTrue(manager.getRoot().exists());
+		// 4 + 16 + 64 + 256 files in dir1, 10 + 100 in dir2
+		assertEquals(450, usage.files);
+		assertEquals(450 * 1024, usage.bytes);
+
+		// nothing left to clean up
+		assertEquals(0, manager.cleanup().files);
+	}
+
+	public void testKeep() throws IOException {
+		File dir = manager.createTempDir("hudson");
+		createTree(dir, 1, 2);
+		manager.setKeep(true);
+		assertNull(manager.cleanup());
+		assertTrue(new File(dir, "dir1/file1").exists());
+		manager.setKeep(false);
+	}
+
+	public void testSymlinkNotFollowed() throws Exception {
+		if (System.getProperty("os.name").startsWith("Windows"))
+			return;
+		File outside = manager.createTempDir("outside");
+		createTree(outside, 0, 3);
+		File dir = manager.createTempDir("hudson");
+		Process ln = Runtime.getRuntime().exec(
+				new String[] { "ln", "-s", outside.getPath(), new File(dir, "link").getPath() });
+		assertEquals(0, ln.waitFor());
+		TempDirManager.delete(dir);
+		assertFalse(dir.exists());
+		assertEquals(3, outside.list().length);
+	}
+
+	public void testSelectBase() {
+		assertEquals(new File(System.getProperty("java.io.tmpdir")), TempDirManager.selectBase(null));
+		assertEquals(new File("/some/where"), TempDirManager.selectBase("/some/where"));
+		File ram = TempDirManager.selectBase("ram");
+		assertTrue(ram.isDirectory());
+	}
+}
@@ -0,0 +1,132 @@
+package hudson.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the durations of the last run in a {@link TimingStore} with the
+ * previous runs, and flags the tests and phases that got slower.
+ *
+ * A duration is a regression when it exceeds the mean of the previous runs by
+ * more than the given number of standard deviations and by the given ratio;
+ * the ratio keeps very stable, very short phases from being flagged for a few
+ * milliseconds. Only the last {@link #HISTORY} runs are considered, so that a
+ * slow trend becomes the new normal after a while.
+ *
+ * Run with <tt>main()</tt> to print the report of the store given as argument,
+ * or of the <tt>hudson.tester.timings</tt> one; the exit status is 1 when there
+ * are regressions.
+ */
+public class TimingReport {
+	public static final int HISTORY = 20;
+
+	/**
+	 * One test phase slower than usual.
+	 */
+	public static class Regression {
+		public final String test;
+		public final String phase;
+		public final long millis;
+		public final double mean;
+		public final double deviation;
+		public final int runs;
+
+		Regression(String test, String phase, long millis, double mean, double deviation, int runs) {
+			this.test = test;
+			this.phase = phase;
+			this.millis = millis;
+			this.mean = mean;
+			this.deviation = deviation;
+			this.runs = runs;
+		}
+
+		@Override
+		public String toString() {
+			return test + " " + phase + ": " + millis + "ms, mean of " + runs + " previous runs " + Math.round(mean)
+					+ "ms +/- " + Math.round(deviation) + "ms";
+		}
+	}
+
+	private final double sigmas;
+	private final double minRatio;
+	private final int minRuns;
+
+	/**
+	 * @param sigmas
+	 *            standard deviations above the mean to flag a duration
+	 * @param minRatio
+	 *            minimum ratio of a flagged duration to the mean
+	 * @param minRuns
+	 *            minimum number of previous runs to compare with
+	 */
+	public TimingReport(double sigmas, double minRatio, int minRuns) {
+		this.sigmas = sigmas;
+		this.minRatio = minRatio;
+		this.minRuns = minRuns;
+	}
+
+	/**
+	 * @return the regressions of the last run, in the order of the store
+	 */
+	public List<Regression> findRegressions(List<TimingStore.Record> records) {
+		// duration per test and phase, then per run in chronological order
+		Map<String, Map<String, Long>> durations = new LinkedHashMap<String, Map<String, Long>>();
+		String lastRun = null;
+		for (TimingStore.Record record : records) {
+			String key = record.test + "\t" + record.phase;
+			Map<String, Long> runs = durations.get(key);
+			if (runs == null) {
+				runs = new LinkedHashMap<String, Long>();
+				durations.put(key, runs);
+			}
+			Long previous = runs.get(record.run);
+			runs.put(record.run, record.millis + (previous == null ? 0 : previous));
+			lastRun = record.run;
+		}
+
+		List<Regression> regressions = new ArrayList<Regression>();
+		for (Map.Entry<String, Map<String, Long>> e : durations.entrySet()) {
+			Long latest = e.getValue().remove(lastRun);
+			if (latest == null)
+				continue;
+			List<Long> history = new ArrayList<Long>(e.getValue().values());
+			history = history.subList(Math.max(0, history.size() - HISTORY), history.size());
+			if (history.size() < minRuns)
+				continue;
+			double mean = 0;
+			for (long millis : history)
+				mean += millis;
+			mean /= history.size();
+			double variance = 0;
+			for (long millis : history)
+				variance += (millis - mean) * (millis - mean);
+			double deviation = Math.sqrt(variance / history.size());
+			if (latest > mean + sigmas * deviation && latest > mean * minRatio) {
+				String[] key = e.getKey().split("\t");
+				regressions.add(new Regression(key[0], key[1], latest, mean, deviation, history.size()));
+			}
+		}
+		return regressions;
+	}
+
+	public static void main(String[] args) throws IOException {
+		TimingStore store = args.length > 0 ? new TimingStore(new File(args[0]), null) : TimingStore.getInstance();
+		if (store == null) {
+			System.err.println("No timing store, set hudson.tester.timings");
+			System.exit(2);
+		}
+		TimingReport report = new TimingReport(Double.parseDouble(System.getProperty("hudson.tester.regressionSigmas",
+				"3")), Double.parseDouble(System.getProperty("hudson.tester.regressionRatio", "1.2")), 3);
+		List<Regression> regressions = report.findRegressions(store.load());
+		PrintStream out = System.out;
+		out.println(regressions.size() + " regressions in " + store.getFile());
+		for (Regression regression : regressions)
+			out.println("  " + regression);
+		System.exit(regressions.isEmpty() ? 0 : 1);
+	}
+}
@@ -0,0 +1,89 @@
+package hudson.util;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TimingReportTest extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("timings", ".tsv");
+		file.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	/**
+	 * Record a run with the given durations of test A and test B
+	 */
+	private void run(String run, long a, long b) {
+		TimingStore store = new TimingStore(file, run);
+		store.record("A", new String[] { "test", "buildWait" }, new long[] { a, 10 });
+		store.record("B", new String[] { "test" }, new long[] { b });
+	}
+
+	private List<TimingReport.Regression> regressions() throws Exception {
+		return new TimingReport(3, 1.2, 3).findRegressions(new TimingStore(file, null).load());
+	}
+
+	public void testAppendAndLoad() throws Exception {
+		run("1", 100, 200);
+		run("2", 110, 210);
+		List<TimingStore.Record> records = new TimingStore(file, null).load();
+		assertEquals(6, records.size());
+		assertEquals("2", records.get(5).run);
+		assertEquals("B", records.get(5).test);
+		assertEquals(210, records.get(5).millis);
+	}
+
+	public void testRegression() throws Exception {
+		run("1", 100, 200);
+		run("2", 104, 190);
+		run("3", 96, 210);
+		run("4", 200, 205);
+		List<TimingReport.Regression> regressions = regressions();
+		assertEquals(1, regressions.size());
+		assertEquals("A", regressions.get(0).test);
+		assertEquals("test", regressions.get(0).phase);
+		assertEquals(200, regressions.get(0).millis);
+	}
+
+	public void testNotEnoughHistory() throws Exception {
+		run("1", 100, 200);
+		run("2", 104, 190);
+		run("3", 1000, 1000);
+		assertTrue(regressions().isEmpty());
+	}
+
+	public void testMinimumRatio() throws Exception {
+		// perfectly stable, a couple of milliseconds more is no regression
+		run("1", 100, 200);
+		run("2", 100, 200);
+		run("3", 100, 200);
+		run("4", 102, 200);
+		assertTrue(regressions().isEmpty());
+	}
+
+	public void testSameTestTwiceInARun() throws Exception {
+		run("1", 100, 200);
+		run("2", 100, 200);
+		run("3", 100, 200);
+		run("4", 60, 200);
+		run("4", 60, 200);
+		// durations add up: A test 120ms is within the ratio, not A buildWait
+		// 20ms nor B 400ms
+		List<TimingReport.Regression> regressions = regressions();
+		assertEquals(2, regressions.size());
+		assertEquals("buildWait", regressions.get(0).phase);
+		assertEquals(20, regressions.get(0).millis);
+		assertEquals("B", regressions.get(1).test);
+		assertEquals(400, regressions.get(1).millis);
+	}
+}
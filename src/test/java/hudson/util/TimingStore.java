@@ -0,0 +1,125 @@
+package hudson.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only store of test durations, kept across runs so that
+ * {@link TimingReport} can tell when tests got slower.
+ *
+ * Each line holds the run, the test, the phase (Hudson startup, fixture
+ * creation, build waits...) and the duration in milliseconds, separated by
+ * tabs. The run is identified by the start time of the JVM.
+ *
+ * Recording is enabled by setting the <tt>hudson.tester.timings</tt> system
+ * property to the file, e.g. outside of <tt>target</tt> so that it survives
+ * <tt>mvn clean</tt>; runs that do not set it leave no file behind.
+ */
+public class TimingStore {
+	private static final Logger LOGGER = Logger.getLogger(TimingStore.class.getName());
+
+	private static TimingStore instance;
+
+	/**
+	 * One duration.
+	 */
+	public static class Record {
+		public final String run;
+		public final String test;
+		public final String phase;
+		public final long millis;
+
+		public Record(String run, String test, String phase, long millis) {
+			this.run = run;
+			this.test = test;
+			this.phase = phase;
+			this.millis = millis;
+		}
+	}
+
+	private final File file;
+	private final String run;
+
+	public TimingStore(File file, String run) {
+		this.file = file;
+		this.run = run;
+	}
+
+	/**
+	 * @return the store of this run, null if recording is disabled
+	 */
+	public static synchronized TimingStore getInstance() {
+		if (instance == null) {
+			String path = System.getProperty("hudson.tester.timings");
+			if (path == null || path.length() == 0)
+				return null;
+			Date start = new Date(ManagementFactory.getRuntimeMXBean().getStartTime());
+			instance = new TimingStore(new File(path), new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(start));
+		}
+		return instance;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getRun() {
+		return run;
+	}
+
+	/**
+	 * Append durations of a test; failures to write are logged, not thrown,
+	 * so that they never fail the test
+	 */
+	public synchronized void record(String test, String[] phases, long[] millis) {
+		try {
+			file.getParentFile().mkdirs();
+			Writer out = new FileWriter(file, true);
+			try {
+				for (int i = 0; i < phases.length; i++)
+					out.write(run + "\t" + test + "\t" + phases[i] + "\t" + millis[i] + "\n");
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to record timings in " + file, e);
+		}
+	}
+
+	/**
+	 * @return all records, oldest first; malformed lines are skipped
+	 */
+	public synchronized List<Record> load() throws IOException {
+		List<Record> records = new ArrayList<Record>();
+		if (!file.exists())
+			return records;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length != 4)
+					continue;
+				try {
+					records.add(new Record(fields[0], fields[1], fields[2], Long.parseLong(fields[3])));
+				} catch (NumberFormatException e) {
+					// interrupted write
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return records;
+	}
+}
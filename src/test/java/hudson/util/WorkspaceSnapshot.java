@@ -0,0 +1,91 @@
+package hudson.util;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Size and modification time of every file of a workspace, to find out what a
+ * checkout or update wrote.
+ *
+ * Files are compared on modification time and length, so a file rewritten
+ * within the timestamp granularity of the file system with the same length is
+ * not seen: wait a second between {@link #take(File)} and the operation being
+ * measured. The <tt>.svn</tt> administrative directories are left out, only
+ * the files a build sees count.
+ */
+public class WorkspaceSnapshot {
+	private static class Stamp {
+		final long lastModified, length;
+
+		Stamp(File f) {
+			this.lastModified = f.lastModified();
+			this.length = f.length();
+		}
+
+		boolean sameAs(Stamp s) {
+			return lastModified == s.lastModified && length == s.length;
+		}
+	}
+
+	/**
+	 * What changed between two snapshots.
+	 */
+	public static class Delta {
+		public int filesWritten, filesDeleted;
+		public long bytesWritten;
+
+		@Override
+		public String toString() {
+			return filesWritten + " files written (" + bytesWritten / 1024 + "KB), " + filesDeleted + " deleted";
+		}
+	}
+
+	private final Map<String, Stamp> stamps = new HashMap<String, Stamp>();
+
+	private WorkspaceSnapshot() {
+	}
+
+	public static WorkspaceSnapshot take(File dir) {
+		WorkspaceSnapshot snapshot = new WorkspaceSnapshot();
+		snapshot.scan(dir, "");
+		return snapshot;
+	}
+
+	private void scan(File dir, String path) {
+		File[] children = dir.listFiles();
+		if (children == null)
+			return;
+		for (File child : children) {
+			if (child.isDirectory()) {
+				if (!child.getName().equals(".svn"))
+					scan(child, path + child.getName() + "/");
+			} else {
+				stamps.put(path + child.getName(), new Stamp(child));
+			}
+		}
+	}
+
+	public int getFileCount() {
+		return stamps.size();
+	}
+
+	/**
+	 * @return what was written or deleted between this snapshot and a later one
+	 */
+	public Delta diff(WorkspaceSnapshot after) {
+		Delta delta = new Delta();
+		for (Map.Entry<String, Stamp> e : after.stamps.entrySet()) {
+			Stamp before = stamps.get(e.getKey());
+			if (before == null || !before.sameAs(e.getValue())) {
+				delta.filesWritten++;
+				delta.bytesWritten += e.getValue().length;
+			}
+		}
+		for (String path : stamps.keySet()) {
+			if (!after.stamps.containsKey(path))
+				delta.filesDeleted++;
+		}
+		return delta;
+	}
+}